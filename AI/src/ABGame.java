@@ -1,9 +1,11 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -13,13 +15,38 @@ import java.util.List;
 public class ABGame {
 
 	public static final int posCnt = 23;
+	public static final int pieceValue = 1000;
 	char[] inBoard = new char[23];
 	int inWCnt, inBCnt;
 	char[] outBoard = new char[23];
 	int outWCnt, outBCnt;
 	int treeDepth;
 	int posEvalCnt = 0;
-	Node root;
+	SearchStats stats = new SearchStats();
+	TranspositionTable tt = new TranspositionTable();
+	boolean logStats = false;
+	int lmrReduction = 0;
+	int lmrMoves = 3;
+	int futilityMargin = 0;
+	int razorMargin = 0;
+	boolean etc = false;
+	FlyingEndgame endgame;
+	int multiPv = 1;
+	int[] pvChildren = new int[1];
+	int pvCnt = 0;
+	long[][] pvLines = new long[1][];
+	PvTable pv = new PvTable();
+	boolean printPv = false;
+	NodeArena arena = new NodeArena();
+	NodeArena spare = new NodeArena();
+	int root;
+	boolean reuseTree = false;
+	int lastTreeDepth = 0;
+	int reusedCnt = 0;
+	volatile boolean stopped = false;
+	MoveGenerator[] generators;
+	MoveGenerator blockCheck = new MoveGenerator();
+	int[] rootChildren = new int[64];
 	
 	public ABGame() {
 		
@@ -32,7 +59,7 @@ public class ABGame {
 	 */
 	public void initialize(String[] args) throws IOException {
 		if(args.length < 3) {
-			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, depth");
+			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, depth, and optionally stats, lmr=plies, lmrmoves=moves, futility=margin, razor=margin, etc, endgame=directory, multipv=moves, pv");
 			System.exit(1);
 		}
 
@@ -46,6 +73,12 @@ public class ABGame {
 		}
 		populateBoardFromString(this.inBoard, inBoard);
 		br.close();
+		for(int i = 3; i < args.length; i++) {
+			if(!setOption(args[i])) {
+				System.out.println("Invalid option: "+args[i]);
+				System.exit(1);
+			}
+		}
 
 		this.treeDepth = Integer.parseInt(args[2]);
 		if(this.treeDepth < 1) {
@@ -54,6 +87,55 @@ public class ABGame {
 		}
 	}
 	
+	/**
+	 * This method sets one of the optional search settings: stats to print the search statistics,
+	 * lmr=plies for the depth late move reductions take off, 0 turning them off, lmrmoves=moves for the number of moves of a node searched to the full depth before reductions start,
+	 * futility=margin and razor=margin for the margins of futility pruning and razoring, 0 turning them off. Sensible margins are one piece, 1000, and two pieces, 2000.
+	 * etc turns on the enhanced transposition cutoff. endgame=directory probes the solved flying endgame kept in the directory, as built by FlyingEndgame.
+	 * multipv=moves searches for that many best moves of the root, each with its estimate and principal variation, instead of only the best one.
+	 * pv prints the principal variation of the search with the result.
+	 * It returns false for an unknown or invalid option.
+	 * @param option
+	 * @return
+	 */
+	public boolean setOption(String option) {
+		if(option.toLowerCase().startsWith("endgame=")) {
+			try {
+				this.endgame = FlyingEndgame.open(new File(option.substring("endgame=".length())));
+			} catch(IOException e) {
+				return false;
+			}
+			return this.endgame.getMaxCnt() != 0;
+		}
+		String[] parts = option.toLowerCase().split("=");
+		try {
+			if(parts.length == 1 && parts[0].equals("stats")) {
+				this.logStats = true;
+			} else if(parts.length == 1 && parts[0].equals("etc")) {
+				this.etc = true;
+			} else if(parts.length == 1 && parts[0].equals("pv")) {
+				this.printPv = true;
+			} else if(parts.length == 2 && parts[0].equals("lmr") && Integer.parseInt(parts[1]) >= 0) {
+				this.lmrReduction = Integer.parseInt(parts[1]);
+			} else if(parts.length == 2 && parts[0].equals("lmrmoves") && Integer.parseInt(parts[1]) >= 0) {
+				this.lmrMoves = Integer.parseInt(parts[1]);
+			} else if(parts.length == 2 && parts[0].equals("futility") && Integer.parseInt(parts[1]) >= 0) {
+				this.futilityMargin = Integer.parseInt(parts[1]);
+			} else if(parts.length == 2 && parts[0].equals("razor") && Integer.parseInt(parts[1]) >= 0) {
+				this.razorMargin = Integer.parseInt(parts[1]);
+			} else if(parts.length == 2 && parts[0].equals("multipv") && Integer.parseInt(parts[1]) >= 1) {
+				this.multiPv = Integer.parseInt(parts[1]);
+				this.pvChildren = new int[this.multiPv];
+				this.pvLines = new long[this.multiPv][];
+			} else {
+				return false;
+			}
+		} catch(NumberFormatException e) {
+			return false;
+		}
+		return true;
+	}
+
 	private boolean isValid(String boardStr) {
 		if(boardStr.length() != 23) {
 			return false;
@@ -95,164 +177,590 @@ public class ABGame {
 	}
 
 	/**
-	 * This method contains the starting calls to the whole algorithm. Creates the root node and invokes the recursive methods with it as input.
+	 * This method contains the starting calls to the whole algorithm. Checks whether the game is already over, and searches the input board otherwise.
 	 */
 	public void run() {
-		this.root = new Node();
-		copyBoard(this.inBoard, this.root.board);
-		this.root.depth = 0;
-		this.root.type = 'w';
-
-		Node n = new Node();
-		copyBoard(this.root.board, n.board);
-		n.type = 'b';
-
-		if(getOccCnt(this.root.board, 'b') < 3) {
+		if(getOccCnt(this.inBoard, 'b') < 3) {
 			System.out.println("You Won!");
 			System.exit(0);
-		} else if(getOccCnt(this.root.board, 'w') < 3) {
+		} else if(getOccCnt(this.inBoard, 'w') < 3) {
 			System.out.println("You Lost!");
 			System.exit(0);
-		} else if(generatePossibleBoards(n).size() == 0) {
+		} else if(generatePossibleBoards(this.inBoard, 'b').size() == 0) {
 			System.out.println("You Won!");
 			System.exit(0);
-		} else if(generatePossibleBoards(this.root).size() == 0) {
+		} else if(generatePossibleBoards(this.inBoard, 'w').size() == 0) {
 			System.out.println("You Lost!");
 			System.exit(0);
 		}
 
-		findBestOutputBoard(this.root);
-		applyABMinMax(this.root);
+		search();
+	}
+
+	/**
+	 * This method creates the root node from the input board and searches it till the input tree depth.
+	 * Unlike run, it doesn't check whether the game is already over, so it can be called by other classes that track the game themselves.
+	 * The tree is kept in the arena, which is reused by every search of this instance.
+	 * With reuseTree set, when the input board is two plies below the root of the previous search, the subtree under it is kept and only its frontier is expanded.
+	 */
+	public void search() {
+		int retained = NodeArena.none;
+		if(this.reuseTree && this.arena.getSize() > 0 && this.treeDepth == this.lastTreeDepth) {
+			retained = this.arena.findGrandchild(this.root, PackedBoard.pack(this.inBoard));
+		}
+		if(retained != NodeArena.none) {
+			takeOver(this.arena, retained);
+		} else {
+			this.arena.reset();
+			this.arena.newNode(PackedBoard.pack(this.inBoard), NodeArena.none, 0);
+			this.reusedCnt = 0;
+		}
+		searchTree();
+	}
+
+	/**
+	 * This method makes a copy of the subtree below the given node of the given arena the tree of this instance, with the node as its root.
+	 * The arena can belong to another instance, which is not touched afterwards. The node has to hold the input board.
+	 * @param from
+	 * @param node
+	 */
+	public void takeOver(NodeArena from, int node) {
+		this.reusedCnt = this.spare.copySubtree(from, node);
+		NodeArena a = this.arena;
+		this.arena = this.spare;
+		this.spare = a;
+	}
+
+	/**
+	 * This method searches the tree in the arena, which is either a fresh root or a subtree taken over from an earlier search, till the input tree depth.
+	 * It returns early, with no usable result, when stopped is set by another thread.
+	 * When the root is on the principal variation of the last search, the moves of that variation are searched first, and the new variation becomes the seed of the next search.
+	 * The transposition table is only cleared when the depth changes, so a search finds the positions filled in by the searches before it, or by another instance sharing the table.
+	 * An instance that shares its table has to have lastTreeDepth set to the depth it searches, or its first search clears the positions stored by the other one.
+	 */
+	public void searchTree() {
+		this.stats = new SearchStats();
+		this.posEvalCnt = 0;
+		this.stats.start("ABGame", this.inBoard);
+		this.stats.reused(this.reusedCnt);
+		this.root = 0;
+		if(this.treeDepth != this.lastTreeDepth)
+			this.tt.clear();
+		this.lastTreeDepth = this.treeDepth;
+		this.pvCnt = 0;
+		if(this.generators == null || this.generators.length < this.treeDepth + 1) {
+			this.generators = new MoveGenerator[this.treeDepth + 1];
+			for(int i = 0; i < this.generators.length; i++) {
+				this.generators[i] = new MoveGenerator();
+			}
+		}
+
+		this.pv.reset(this.treeDepth);
+		this.pv.setHint(this.arena.board[this.root]);
+
+		this.stats.beginIteration(this.treeDepth);
+		applyABMinMax(this.root, this.treeDepth);
+		this.stats.endIteration();
+		this.stats.finish();
+		if(!this.stopped)
+			this.pv.setSeed(this.arena.board[this.root], getPv().getBoards());
 	}
 	
 	/**
 	 * This method contains the alpha beta pruning logic.
 	 * It goes through the nodes, and evaluates only selective nodes while eliminating from consideration some of the sub trees which need not be evaluated.
+	 * A board already searched at the same depth through another move order takes its value from the transposition table instead of being searched again.
+	 * The children of a node are generated one at a time as the search gets to them, mill closing moves first, so no moves are generated for the siblings a cutoff skips.
+	 * A node left by a cutoff in an earlier search carries on generating after the children it already has.
+	 * Nodes at the depth limit are evaluated statically, straight from the packed board. They are not batched, as every value can cut off the siblings after it. With late move reductions on, the quiet moves after the first few get a lower limit,
+	 * and are searched again to the full limit if they turn out better than the best move so far.
+	 * With the enhanced transposition cutoff on, the transposition table is checked for a child that already proves a cutoff before the children of a node are searched.
+	 * With futility pruning on, quiet moves to the depth limit that can't beat the best move so far are not evaluated at all,
+	 * and with razoring on, moves two plies above the limit that can't beat it even with a capture are searched one ply less deep first.
+	 * With the flying endgame loaded, a board where a side has three pieces takes its exact value from it, and is not searched.
+	 * In multi-PV mode, a move of the root only has to beat the worst of the best moves found so far, not the best one, so the search at the root
+	 * runs with that as its bound. The moves found on the way are exact, the others are cut off as soon as they can't make the list.
+	 * The principal variation is kept in the PvTable on the way, and a node on the variation of the last search searches the move of that variation first.
+	 * The move played is the first of the variation, the first child of the root searched to the best estimate. A child cut off keeps no estimate, so it can't be picked.
 	 * @param node
+	 * @param limit
 	 */
-	public void applyABMinMax(Node node){
-		if(node.children.size() == 0) {
-			node.staticEst = getStaticEstimate(node.board);
-			if(node.type == 'w') {
-				if(node.staticEst < node.parent.minStaticEst) {
-					node.parent.minStaticEst = node.staticEst;
+	public void applyABMinMax(int node, int limit){
+		NodeArena a = this.arena;
+		int depth = a.depth[node];
+		char type = a.getType(node);
+		int parent = a.parent[node];
+		if(this.stopped)
+			return;
+		this.stats.node(depth);
+		this.pv.clear(depth);
+		if(depth == 0)
+			expandRoot(node);
+		if(a.isEvaluated(node) || probeEndgame(node) || probe(node, limit)) {
+			if(type == 'w') {
+				if(a.staticEst[node] < a.minStaticEst[parent]) {
+					a.minStaticEst[parent] = a.staticEst[node];
 				}
 			} else {
-				if(node.staticEst > node.parent.maxStaticEst) {
-					node.parent.maxStaticEst = node.staticEst;
+				if(a.staticEst[node] > a.maxStaticEst[parent]) {
+					a.maxStaticEst[parent] = a.staticEst[node];
+				}
+			}
+			return;
+		}
+
+		boolean frontier = (depth >= limit) || (PackedBoard.getWhiteCnt(a.board[node]) <= 2) || (PackedBoard.getBlackCnt(a.board[node]) <= 2);
+		if(this.etc && !frontier && limit - depth >= 2 && isTranspositionCutoff(node, limit))
+			return;
+		MoveGenerator gen = null;
+		if(!frontier && a.firstChild[node] == NodeArena.none && !a.isExpanded(node)) {
+			gen = this.generators[depth];
+			gen.init(a.board[node], type, false, true);
+			addNextChild(node, NodeArena.none, gen);
+		}
+		if(frontier || a.firstChild[node] == NodeArena.none) {
+			a.staticEst[node] = BatchEvaluator.getGameEstimate(a.board[node]);
+			a.setEvaluated(node);
+			store(node, limit);
+			if(type == 'w') {
+				if(a.staticEst[node] < a.minStaticEst[parent]) {
+					a.minStaticEst[parent] = a.staticEst[node];
+				}
+			} else {
+				if(a.staticEst[node] > a.maxStaticEst[parent]) {
+					a.maxStaticEst[parent] = a.staticEst[node];
 				}
 			}
 			this.posEvalCnt++;
-		} else {
-			if(node.staticEval) {
-				if(node.type == 'w') {
-					if(node.staticEst < node.parent.minStaticEst) {
-						node.parent.minStaticEst = node.staticEst;
+			this.stats.eval();
+			return;
+		}
+
+		if(depth != 0)
+			gen = searchPvFirst(node, gen);
+		int best = (type == 'w') ? -10000000 : 10000000;
+		int i = 0;
+		for(int child = a.firstChild[node]; child != NodeArena.none; child = a.nextSibling[child], i++) {
+			if(depth == 0 && this.multiPv > 1)
+				a.maxStaticEst[node] = (this.pvCnt < this.multiPv) ? -10000000 : a.staticEst[this.pvChildren[this.pvCnt - 1]];
+			if(isFutile(node, child, limit)) {
+				this.stats.futile();
+			} else if(isRazored(node, child, limit)) {
+				this.stats.razored(searchReduced(node, child, limit, limit - 1));
+			} else if(isReducible(node, child, i, limit)) {
+				this.stats.reduced(searchReduced(node, child, limit, limit - this.lmrReduction));
+			} else {
+				applyABMinMax(child, limit);
+			}
+			if(a.isEvaluated(child) && ((type == 'w') ? a.staticEst[child] > best : a.staticEst[child] < best)) {
+				best = a.staticEst[child];
+				this.pv.update(depth, a.board[child]);
+			}
+			if(depth == 0 && this.multiPv > 1 && a.isEvaluated(child))
+				addRootMove(child);
+			if(depth != 0) {
+				if(type == 'w') {
+					if(a.maxStaticEst[node] > a.minStaticEst[parent]) {
+						this.stats.cutoff(depth, i);
+						return;
 					}
 				} else {
-					if(node.staticEst > node.parent.maxStaticEst) {
-						node.parent.maxStaticEst = node.staticEst;
+					if(a.minStaticEst[node] < a.maxStaticEst[parent]) {
+						this.stats.cutoff(depth, i);
+						return;
 					}
 				}
-				return;
-			} else {
-				for(int i = 0; i < node.children.size(); i++) {
-					applyABMinMax(node.children.get(i));
-					if(node.depth != 0) {
-						if(node.type == 'w') {
-							if(node.maxStaticEst > node.parent.minStaticEst) {
-								return;
-							}
-						} else {
-							if(node.minStaticEst < node.parent.maxStaticEst) {
-								return;
-							}
-						}
-					}	
-				}	
-				if(node.type == 'w') {
-					node.staticEst = node.maxStaticEst;
-					node.staticEval = true;
-					if(node.depth != 0) {
-						if(node.staticEst < node.parent.minStaticEst) {
-							node.parent.minStaticEst = node.staticEst;
-						}
-					}	
-				} else {
-					node.staticEst = node.minStaticEst;
-					node.staticEval = true;
-					if(node.depth != 0) {
-						if(node.staticEst > node.parent.maxStaticEst) {
-							node.parent.maxStaticEst = node.staticEst;
-						}
-					}	
+			}
+			if(a.nextSibling[child] == NodeArena.none && !a.isExpanded(node)) {
+				if(gen == null) {
+					gen = this.generators[depth];
+					gen.init(a.board[node], type, false, true);
+					gen.skip(i + 1);
 				}
+				addNextChild(node, child, gen);
 			}
-			if(node.depth == 0) {
-				for(int i = 0;i < node.children.size(); i++) {
-					if(node.children.get(i).staticEst == node.staticEst) {
-						copyBoard(node.children.get(i).board, node.board);
-						break;
-					}
+		}
+		if(this.stopped)
+			return;
+		if(depth == 0 && this.multiPv > 1 && this.pvCnt > 0)
+			a.maxStaticEst[node] = a.staticEst[this.pvChildren[0]];
+		if(type == 'w') {
+			a.staticEst[node] = a.maxStaticEst[node];
+			a.setEvaluated(node);
+			store(node, limit);
+			if(depth != 0) {
+				if(a.staticEst[node] < a.minStaticEst[parent]) {
+					a.minStaticEst[parent] = a.staticEst[node];
+				}
+			}
+		} else {
+			a.staticEst[node] = a.minStaticEst[node];
+			a.setEvaluated(node);
+			store(node, limit);
+			if(depth != 0) {
+				if(a.staticEst[node] > a.maxStaticEst[parent]) {
+					a.maxStaticEst[parent] = a.staticEst[node];
 				}
 			}
 		}
+		if(depth == 0 && this.pv.getMove() != MoveGenerator.none)
+			PackedBoard.unpack(this.pv.getMove(), this.outBoard);
 	}
 
-	private int getOccCnt(char[] board, char c) {
-		int cnt = 0;
-		for(char a: board) {
-			if(a == c)
+	/**
+	 * This method adds the given child of the root, searched to an exact estimate, to the list of the best moves, which is kept sorted from the best down.
+	 * A move goes after the moves with the same estimate, so among equal moves the first generated stays first. The list keeps at most multiPv moves.
+	 * The line of the move, as the PvTable holds it right after the move is searched, is kept with it.
+	 * @param child
+	 */
+	private void addRootMove(int child) {
+		NodeArena a = this.arena;
+		int k = Math.min(this.pvCnt, this.multiPv - 1);
+		if(this.pvCnt == this.multiPv && a.staticEst[child] <= a.staticEst[this.pvChildren[k]])
+			return;
+		while(k > 0 && a.staticEst[this.pvChildren[k - 1]] < a.staticEst[child]) {
+			this.pvChildren[k] = this.pvChildren[k - 1];
+			this.pvLines[k] = this.pvLines[k - 1];
+			k--;
+		}
+		this.pvChildren[k] = child;
+		this.pvLines[k] = this.pv.getLine(0, a.board[child]);
+		if(this.pvCnt < this.multiPv)
+			this.pvCnt++;
+	}
+
+	/**
+	 * This method returns the best moves of the last search in multi-PV mode, from the best down, each with its estimate and principal variation.
+	 * A variation is the line the PvTable held for the move when it was searched, carried on from the transposition table the same way as the line of getPv.
+	 * @return
+	 */
+	public List<PvLine> getRootLines() {
+		List<PvLine> lines = new ArrayList<PvLine>();
+		for(int k = 0; k < this.pvCnt; k++) {
+			int estimate = this.arena.staticEst[this.pvChildren[k]];
+			lines.add(new PvLine(estimate, PvTable.extend(this.pvLines[k], estimate, this.treeDepth, this.tt, this.generators[0], false)));
+		}
+		return lines;
+	}
+
+	/**
+	 * This method returns the principal variation of the last search: the estimate of the root, and the boards of the moves expected from it down to the depth limit.
+	 * The variation is the one kept in the PvTable, carried on from the transposition table where it ends at a board the search took from the table.
+	 * @return
+	 */
+	public PvLine getPv() {
+		int estimate = this.arena.staticEst[this.root];
+		return new PvLine(estimate, this.pv.getLine(estimate, this.treeDepth, this.tt, this.generators[0], false));
+	}
+
+	/**
+	 * This method moves the child the variation of the last search expects from the given node, if the node is on it, to the front of the children.
+	 * Children are generated until that child is there, so the children of the node are still the first ones of the generator, and the generation carries on after them as usual.
+	 * It returns the generator, which is set up here if the node didn't have one yet and more children had to be generated.
+	 * @param node
+	 * @param gen
+	 * @return
+	 */
+	private MoveGenerator searchPvFirst(int node, MoveGenerator gen) {
+		NodeArena a = this.arena;
+		int depth = a.depth[node];
+		long hint = this.pv.getHint(depth, a.board[node]);
+		if(hint == MoveGenerator.none)
+			return gen;
+		int cnt = 0, last = NodeArena.none, prev = NodeArena.none, found = NodeArena.none;
+		for(int c = a.firstChild[node]; c != NodeArena.none; c = a.nextSibling[c], cnt++) {
+			if(a.board[c] == hint) {
+				found = c;
+				prev = last;
+			}
+			last = c;
+		}
+		while(found == NodeArena.none && !a.isExpanded(node)) {
+			if(gen == null) {
+				gen = this.generators[depth];
+				gen.init(a.board[node], a.getType(node), false, true);
+				gen.skip(cnt);
+			}
+			addNextChild(node, last, gen);
+			if(a.nextSibling[last] != NodeArena.none) {
+				prev = last;
+				last = a.nextSibling[last];
 				cnt++;
+				if(a.board[last] == hint)
+					found = last;
+			}
 		}
-		return cnt;
+		if(found != NodeArena.none && prev != NodeArena.none) {
+			a.nextSibling[prev] = a.nextSibling[found];
+			a.nextSibling[found] = a.firstChild[node];
+			a.firstChild[node] = found;
+		}
+		return gen;
 	}
 
 	/**
-	 * This method takes a node as input, and calculates all the possible moves under it till the input tree depth.
-	 * This method is initially invoked by the root node of the tree, and it gets recursively invoked for every other node of the tree as well.
+	 * This method searches the given child to the given reduced limit. If the child turns out better than the best move of the node so far,
+	 * the reduced result is dropped, and the child is searched again to the full limit. It returns whether the child was searched again.
 	 * @param node
+	 * @param child
+	 * @param limit
+	 * @param reducedLimit
+	 * @return
 	 */
-	public void findBestOutputBoard(Node node) {
-		char[] selBoard = new char[23];
-		if((node.depth == this.treeDepth) || (getOccCnt(node.board, 'w') <= 2) || (getOccCnt(node.board, 'b') <= 2)) {
-//			node.staticEst = getStaticEstimate(node.board);
-//			copyBoard(node.board, selBoard);
-//			this.posEvalCnt++;
-		} else {
-//			if(node.type == 'w')
-//				node.staticEst = Integer.MIN_VALUE;
-//			else if(node.type == 'b')
-//				node.staticEst = Integer.MAX_VALUE;
-			
-			List<char[]> L = generatePossibleBoards(node);
-			for(char[] l: L) {
-				Node child = new Node();
-				child.depth = node.depth + 1;
-				child.type = (node.type == 'w' ? 'b' : 'w');
-				copyBoard(l, child.board);
-				child.parent = node;
-				node.children.add(child);
-				
-				findBestOutputBoard(child);
-				
-				if(node.type == 'w') {
-					if(child.staticEst > node.staticEst) {
-						node.staticEst = child.staticEst;
-						selBoard = child.board;
-					}
-				} else {
-					if(child.staticEst < node.staticEst) {
-						node.staticEst = child.staticEst;
-						selBoard = child.board;
-					}
+	private boolean searchReduced(int node, int child, int limit, int reducedLimit) {
+		NodeArena a = this.arena;
+		char type = a.getType(node);
+		int best = (type == 'w') ? a.maxStaticEst[node] : a.minStaticEst[node];
+		applyABMinMax(child, reducedLimit);
+		boolean researched = a.isEvaluated(child) && ((type == 'w') ? a.staticEst[child] > best : a.staticEst[child] < best);
+		if(researched) {
+			if(type == 'w')
+				a.maxStaticEst[node] = best;
+			else
+				a.minStaticEst[node] = best;
+			clearSubtree(child);
+			applyABMinMax(child, limit);
+		}
+		return researched;
+	}
+
+	private int getMaterial(long packed) {
+		return pieceValue * (PackedBoard.getWhiteCnt(packed) - PackedBoard.getBlackCnt(packed));
+	}
+
+	/**
+	 * This method checks whether the given child, a move to the depth limit, can be skipped by futility pruning.
+	 * Only quiet moves qualify. Their static estimate is the material of the node, which they don't change, less the number of black moves.
+	 * So for white the estimate can't be above the material, unless the move blocks black, which is checked for, and for black it can't be below the material less the margin.
+	 * The move is skipped when that bound can't beat the best move of the node so far.
+	 * @param node
+	 * @param child
+	 * @param limit
+	 * @return
+	 */
+	private boolean isFutile(int node, int child, int limit) {
+		NodeArena a = this.arena;
+		long board = a.board[child];
+		if(this.futilityMargin == 0 || a.depth[node] == 0 || a.depth[child] != limit)
+			return false;
+		if(Long.bitCount(board) != Long.bitCount(a.board[node]))
+			return false;
+		int material = getMaterial(board);
+		if(a.getType(node) == 'w')
+			return material <= a.maxStaticEst[node] && !isBlackBlockable(board);
+		return material - this.futilityMargin >= a.minStaticEst[node];
+	}
+
+	/**
+	 * This method checks if black has no moves on the given board, by the same rule the static estimate counts them with.
+	 * That is also the case when black can move, but only to close a mill, and has no white piece to capture then.
+	 * Only the first move is generated, so the check stops as soon as black has one.
+	 * @param packed
+	 * @return
+	 */
+	private boolean isBlackBlockable(long packed) {
+		this.blockCheck.init(packed, 'b', false, false);
+		return this.blockCheck.next() == MoveGenerator.none;
+	}
+
+	/**
+	 * This method checks whether the given child, two plies above the depth limit, can be razored.
+	 * In two plies the material changes by at most one capture, and the margin covers that and the number of black moves.
+	 * The child is razored when its material, moved by the margin in its favour, still can't beat the best move of the node so far.
+	 * Boards where one capture can end the game are never razored.
+	 * @param node
+	 * @param child
+	 * @param limit
+	 * @return
+	 */
+	private boolean isRazored(int node, int child, int limit) {
+		NodeArena a = this.arena;
+		long board = a.board[child];
+		if(this.razorMargin == 0 || a.depth[node] == 0 || a.depth[child] != limit - 2)
+			return false;
+		if(PackedBoard.getWhiteCnt(board) <= 3 || PackedBoard.getBlackCnt(board) <= 3)
+			return false;
+		int material = getMaterial(board);
+		if(a.getType(node) == 'w')
+			return material + this.razorMargin <= a.maxStaticEst[node];
+		return material - this.razorMargin >= a.minStaticEst[node];
+	}
+
+	/**
+	 * This method checks whether the given child, the given index among its siblings, can be searched to a reduced limit.
+	 * Only quiet moves, the ones that don't close a mill and so capture nothing, are reduced, never at the root, and never below a one ply search.
+	 * @param node
+	 * @param child
+	 * @param index
+	 * @param limit
+	 * @return
+	 */
+	private boolean isReducible(int node, int child, int index, int limit) {
+		NodeArena a = this.arena;
+		if(this.lmrReduction == 0 || a.depth[node] == 0 || index < this.lmrMoves)
+			return false;
+		if(limit - this.lmrReduction <= a.depth[child])
+			return false;
+		return Long.bitCount(a.board[child]) == Long.bitCount(a.board[node]);
+	}
+
+	/**
+	 * This method clears the results of a search in the subtree below the given node, so that it can be searched again to another limit.
+	 * The children generated are kept.
+	 * @param node
+	 */
+	private void clearSubtree(int node) {
+		NodeArena a = this.arena;
+		a.clearSearch(node);
+		for(int child = a.firstChild[node]; child != NodeArena.none; child = a.nextSibling[child]) {
+			clearSubtree(child);
+		}
+	}
+
+	/**
+	 * This method contains the enhanced transposition cutoff. Before the children of the given node are searched, every child board is looked up in the transposition table.
+	 * If the stored value of one of them already beats the bound of the parent, the node would be cut off once the search got to that child, so it is cut off at once.
+	 * The children are only generated as packed boards for this, they are not added to the tree.
+	 * @param node
+	 * @param limit
+	 * @return
+	 */
+	private boolean isTranspositionCutoff(int node, int limit) {
+		NodeArena a = this.arena;
+		int depth = a.depth[node];
+		if(depth == 0)
+			return false;
+		int parent = a.parent[node];
+		char type = a.getType(node);
+		MoveGenerator gen = this.generators[depth];
+		gen.init(a.board[node], type, false, false);
+		for(long board = gen.next(); board != MoveGenerator.none; board = gen.next()) {
+			int slot = this.tt.find(TranspositionTable.getKey(board, depth + 1, limit - depth - 1));
+			this.stats.ttProbe(slot != TranspositionTable.none);
+			if(slot == TranspositionTable.none)
+				continue;
+			int value = this.tt.getValue(slot);
+			if((type == 'w') ? value > a.minStaticEst[parent] : value < a.maxStaticEst[parent]) {
+				this.stats.transpositionCutoff(depth);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * This method adds the next board of the generator as the child after prev, or as the first child when prev is none.
+	 * When the generator has no more boards, the node is marked expanded instead.
+	 * @param node
+	 * @param prev
+	 * @param gen
+	 */
+	private void addNextChild(int node, int prev, MoveGenerator gen) {
+		NodeArena a = this.arena;
+		long board = gen.next();
+		if(board == MoveGenerator.none) {
+			a.setExpanded(node);
+			return;
+		}
+		int child = a.newNode(board, node, a.depth[node] + 1);
+		if(prev == NodeArena.none)
+			a.firstChild[node] = child;
+		else
+			a.nextSibling[prev] = child;
+	}
+
+	/**
+	 * This method generates all the children of the root in the order of generatePossibleBoards, so that the move picked among equally good ones stays the same.
+	 * Children kept from an earlier search are linked in again in that order instead of being added twice.
+	 * @param node
+	 */
+	private void expandRoot(int node) {
+		NodeArena a = this.arena;
+		int cnt = 0;
+		for(int c = a.firstChild[node]; c != NodeArena.none; c = a.nextSibling[c]) {
+			if(cnt == this.rootChildren.length)
+				this.rootChildren = Arrays.copyOf(this.rootChildren, 2 * cnt);
+			this.rootChildren[cnt++] = c;
+		}
+		MoveGenerator gen = this.generators[0];
+		gen.init(a.board[node], a.getType(node), false, false);
+		a.firstChild[node] = NodeArena.none;
+		int prev = NodeArena.none;
+		for(long board = gen.next(); board != MoveGenerator.none; board = gen.next()) {
+			int child = NodeArena.none;
+			for(int k = 0; k < cnt; k++) {
+				if(a.board[this.rootChildren[k]] == board) {
+					child = this.rootChildren[k];
+					break;
 				}
 			}
+			if(child == NodeArena.none)
+				child = a.newNode(board, node, 1);
+			a.nextSibling[child] = NodeArena.none;
+			if(prev == NodeArena.none)
+				a.firstChild[node] = child;
+			else
+				a.nextSibling[prev] = child;
+			prev = child;
 		}
-		
-		if(node.depth == 0)
-			copyBoard(selBoard, node.board);
+		a.setExpanded(node);
+	}
+
+	/**
+	 * This method looks the given node up in the transposition table. On a hit the node takes the stored value and is marked evaluated.
+	 * The root is never looked up, since its best move has to be picked from its own children.
+	 * @param node
+	 * @param limit
+	 * @return
+	 */
+	private boolean probe(int node, int limit) {
+		NodeArena a = this.arena;
+		if(a.depth[node] == 0)
+			return false;
+		int slot = this.tt.find(TranspositionTable.getKey(a.board[node], a.depth[node], limit - a.depth[node]));
+		this.stats.ttProbe(slot != TranspositionTable.none);
+		if(slot == TranspositionTable.none)
+			return false;
+		a.staticEst[node] = this.tt.getValue(slot);
+		a.setEvaluated(node);
+		return true;
 	}
+
+	/**
+	 * This method looks the given node up in the flying endgame, if it is loaded and covers the board.
+	 * On a hit the node takes the exact value, as an estimate for white, and is marked evaluated. The root is never looked up, as for the transposition table.
+	 * @param node
+	 * @return
+	 */
+	private boolean probeEndgame(int node) {
+		NodeArena a = this.arena;
+		if(this.endgame == null || a.depth[node] == 0 || !this.endgame.covers(a.board[node]))
+			return false;
+		ProbeEvent event = this.stats.beginProbe();
+		int value = this.endgame.probe(a.board[node], a.getType(node));
+		this.stats.endProbe(event, "FlyingEndgame", a.board[node], a.depth[node], value != Tablebase.unknown);
+		if(value == Tablebase.unknown)
+			return false;
+		a.staticEst[node] = FlyingEndgame.getScore(value, a.getType(node));
+		a.setEvaluated(node);
+		return true;
+	}
+
+	private void store(int node, int limit) {
+		NodeArena a = this.arena;
+		if(a.depth[node] != 0)
+			this.tt.put(TranspositionTable.getKey(a.board[node], a.depth[node], limit - a.depth[node]), a.staticEst[node]);
+	}
+
+	private int getOccCnt(char[] board, char c) {
+		int cnt = 0;
+		for(char a: board) {
+			if(a == c)
+				cnt++;
+		}
+		return cnt;
+	}
+
 	
 	private List<Integer> getPosOfChar(char[] board, char c) {
 		List<Integer> posList = new ArrayList<Integer>();
@@ -265,39 +773,40 @@ public class ABGame {
 	}
 
 	/**
-	 * This method takes a node as input and generates and returns all boards possible from the given input node's board.
-	 * @param node
+	 * This method generates and returns all boards possible from the given input board, with the given side to move.
+	 * @param board
+	 * @param type
 	 * @return
 	 */
-	private List<char[]> generatePossibleBoards(Node node) {
+	List<char[]> generatePossibleBoards(char[] board, char type) {
 		List<char[]> L = new ArrayList<char[]>();
 
 		for(int i = 0; i < posCnt; i++) {
-			if(node.board[i] == node.type) {
-				if(getOccCnt(node.board, 'w') < 3)
+			if(board[i] == type) {
+				if(getOccCnt(board, 'w') < 3)
 					return L;
 				
 				List<Integer> nbrs = getNeighbour(i);
-				if(getOccCnt(node.board, node.type) == 3) {
-					nbrs = getPosOfChar(node.board, 'x');
+				if(getOccCnt(board, type) == 3) {
+					nbrs = getPosOfChar(board, 'x');
 				}
 				
 				for(int n: nbrs) {
-					if(node.board[n] == 'x') {
+					if(board[n] == 'x') {
 						char[] newBoard = new char[23];
-						copyBoard(node.board, newBoard);
+						copyBoard(board, newBoard);
 						newBoard[i] = 'x';
-						newBoard[n] = node.type;
+						newBoard[n] = type;
 						if(isCloseMill(newBoard, n)) {
 							for(int j = 0; j < 23; j++) {
-								if(newBoard[j]!=node.type && newBoard[j]!='x') {
+								if(newBoard[j]!=type && newBoard[j]!='x') {
 									char[] tempBoard = new char[23];
 									copyBoard(newBoard, tempBoard);
 									if(!isCloseMill(tempBoard, j)) {
 										tempBoard[j] = 'x';
 										L.add(tempBoard);
 									} else {
-										if(getOccCnt(tempBoard, (node.type=='w')?'b':'w') == 3) {
+										if(getOccCnt(tempBoard, (type=='w')?'b':'w') == 3) {
 											tempBoard[j] = 'x';
 											L.add(tempBoard);
 										}
@@ -654,10 +1163,7 @@ public class ABGame {
 				bCnt++;
 		}
 		
-		Node n = new Node();
-		copyBoard(board, n.board);
-		n.type = 'b';
-		List<char[]> L = generatePossibleBoards(n);
+		List<char[]> L = generatePossibleBoards(board, 'b');
 		
 		numBlkMoves = L.size();
 		
@@ -687,7 +1193,7 @@ public class ABGame {
 	public void printResult(String outputFilePath) throws IOException {
 		BufferedWriter bw = new BufferedWriter(new FileWriter(outputFilePath));
 		String inBoardStr = getBoardString(this.inBoard);
-		String outBoardStr = getBoardString(this.root.board);
+		String outBoardStr = getBoardString(this.outBoard);
 		inBoardStr = upperWB(inBoardStr);
 		outBoardStr = upperWB(outBoardStr);
 		bw.write(outBoardStr);
@@ -696,7 +1202,19 @@ public class ABGame {
 		System.out.println("Input Board: "+inBoardStr);
 		System.out.println("Board Position: "+outBoardStr);
 		System.out.println("Positions evaluated by static estimation: "+this.posEvalCnt);
-		System.out.println("MINIMAX Estimate: "+this.root.staticEst);
+		System.out.println("MINIMAX Estimate: "+this.arena.staticEst[this.root]);
+		if(this.printPv) {
+			PvLine line = getPv();
+			System.out.println("PV: estimate "+line.getEstimate()+", line "+line);
+		}
+		if(this.multiPv > 1) {
+			List<PvLine> lines = getRootLines();
+			for(int k = 0; k < lines.size(); k++) {
+				System.out.println("PV "+(k + 1)+": estimate "+lines.get(k).getEstimate()+", line "+lines.get(k));
+			}
+		}
+		if(this.logStats)
+			this.stats.print(System.out);
 	}
 	
 	private String upperWB(String board) {
@@ -1,9 +1,11 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -19,7 +21,19 @@ public class ABOpening {
 	int outWCnt, outBCnt;
 	int treeDepth;
 	int posEvalCnt = 0;
-	Node root;
+	SearchStats stats = new SearchStats();
+	TranspositionTable tt = new TranspositionTable();
+	boolean logStats = false;
+	NodeArena arena = new NodeArena();
+	NodeArena spare = new NodeArena();
+	int root;
+	boolean reuseTree = false;
+	int lastTreeDepth = 0;
+	MoveGenerator[] generators;
+	int[] rootChildren = new int[64];
+	OpeningBook book;
+	PvTable pv = new PvTable();
+	boolean printPv = false;
 	
 	public ABOpening() {
 		
@@ -32,7 +46,7 @@ public class ABOpening {
 	 */
 	public void initialize(String[] args) throws IOException {
 		if(args.length < 3) {
-			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, depth");
+			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, depth, and optionally stats, book=directory, pv");
 			System.exit(1);
 		}
 
@@ -46,6 +60,12 @@ public class ABOpening {
 		}
 		populateBoardFromString(this.inBoard, inBoard);
 		br.close();
+		for(int i = 3; i < args.length; i++) {
+			if(!setOption(args[i])) {
+				System.out.println("Invalid option: "+args[i]);
+				System.exit(1);
+			}
+		}
 
 		this.treeDepth = Integer.parseInt(args[2]);
 		if(this.treeDepth < 1) {
@@ -53,6 +73,36 @@ public class ABOpening {
 			System.exit(1);
 		}
 	}
+
+	/**
+	 * This method sets one of the optional settings: stats to print the search statistics, book=directory to probe the solved placement phase kept in the directory,
+	 * as written by OpeningSolver, and pv to print the principal variation of the search with the result. It returns false for an unknown option, or a directory without a book.
+	 * @param option
+	 * @return
+	 */
+	public boolean setOption(String option) {
+		if(option.equalsIgnoreCase("stats")) {
+			this.logStats = true;
+			return true;
+		}
+		if(option.equalsIgnoreCase("pv")) {
+			this.printPv = true;
+			return true;
+		}
+		if(option.toLowerCase().startsWith("book=")) {
+			OpeningBook b = new OpeningBook();
+			try {
+				if(b.load(new File(option.substring("book=".length()))) == 0)
+					return false;
+			} catch(IOException e) {
+				System.out.println(e.getMessage());
+				return false;
+			}
+			this.book = b;
+			return true;
+		}
+		return false;
+	}
 	
 	private boolean isValid(String boardStr) {
 		if(boardStr.length() != 23) {
@@ -96,170 +146,386 @@ public class ABOpening {
 
 	/**
 	 * This method contains the starting calls to the whole algorithm. Creates the root node and invokes the recursive methods with it as input.
+	 * The tree is kept in the arena, which is reused by every search of this instance.
+	 * With reuseTree set, when the input board is two plies below the root of the previous search, the subtree under it is kept and only its frontier is expanded.
+	 * When the root is on the principal variation of the last search, the moves of that variation are searched first, and the new variation becomes the seed of the next search.
 	 */
 	public void run() {
-		this.root = new Node();
-		copyBoard(this.inBoard, this.root.board);
-		this.root.depth = 0;
-		this.root.type = 'w';
-		this.root.parent = null;
-		findBestOutputBoard(this.root);
+		this.stats = new SearchStats();
+		this.posEvalCnt = 0;
+		this.stats.start("ABOpening", this.inBoard);
+		int retained = NodeArena.none;
+		if(this.reuseTree && this.arena.getSize() > 0 && this.treeDepth == this.lastTreeDepth) {
+			retained = this.arena.findGrandchild(this.root, PackedBoard.pack(this.inBoard));
+		}
+		if(retained != NodeArena.none) {
+			this.stats.reused(this.spare.copySubtree(this.arena, retained));
+			NodeArena a = this.arena;
+			this.arena = this.spare;
+			this.spare = a;
+		} else {
+			this.arena.reset();
+			this.arena.newNode(PackedBoard.pack(this.inBoard), NodeArena.none, 0);
+		}
+		this.root = 0;
+		this.lastTreeDepth = this.treeDepth;
+		this.tt.clear();
+		if(this.generators == null || this.generators.length < this.treeDepth + 1) {
+			this.generators = new MoveGenerator[this.treeDepth + 1];
+			for(int i = 0; i < this.generators.length; i++) {
+				this.generators[i] = new MoveGenerator();
+			}
+		}
+
+		this.pv.reset(this.treeDepth);
+		this.pv.setHint(this.arena.board[this.root]);
+
+		this.stats.beginIteration(this.treeDepth);
 		applyABMinMax(this.root);
+		this.stats.endIteration();
+		this.stats.finish();
+		this.pv.setSeed(this.arena.board[this.root], getPv().getBoards());
 	}
 
 	/**
 	 * This method contains the alpha beta pruning logic.
 	 * It goes through the nodes, and evaluates only selective nodes while eliminating from consideration some of the sub trees which need not be evaluated.
+	 * The children of a node are generated one at a time as the search gets to them, mill closing moves first, so no moves are generated for the siblings a cutoff skips.
+	 * A node left by a cutoff in an earlier search carries on generating after the children it already has.
+	 * A board already searched at the same depth through another move order takes its value from the transposition table instead of being searched again,
+	 * and before the children of a node are searched, the table is checked for a child that already proves a cutoff.
+	 * With a book loaded, a board with as many plies left to search as the book was solved to takes its value from the book, if it is there.
+	 * The principal variation is kept in the PvTable on the way, and a node on the variation of the last search searches the move of that variation first.
+	 * The move played is the first of the variation, the first child of the root searched to the best estimate. A child cut off keeps no estimate, so it can't be picked.
 	 * @param node
 	 */
-	public void applyABMinMax(Node node){
-		if(node.children.size() == 0) {
-			node.staticEst = getStaticEstimate(node.board);
-			if(node.type == 'w') {
-				if(node.staticEst < node.parent.minStaticEst) {
-					node.parent.minStaticEst = node.staticEst;
+	public void applyABMinMax(int node){
+		NodeArena a = this.arena;
+		int depth = a.depth[node];
+		char type = a.getType(node);
+		int parent = a.parent[node];
+		this.stats.node(depth);
+		this.pv.clear(depth);
+		if(depth == 0)
+			expandRoot(node);
+		if(a.isEvaluated(node) || probeBook(node) || probe(node)) {
+			if(type == 'w') {
+				if(a.staticEst[node] < a.minStaticEst[parent]) {
+					a.minStaticEst[parent] = a.staticEst[node];
 				}
 			} else {
-				if(node.staticEst > node.parent.maxStaticEst) {
-					node.parent.maxStaticEst = node.staticEst;
+				if(a.staticEst[node] > a.maxStaticEst[parent]) {
+					a.maxStaticEst[parent] = a.staticEst[node];
+				}
+			}
+			return;
+		}
+
+		if(this.treeDepth - depth >= 2 && isTranspositionCutoff(node))
+			return;
+		MoveGenerator gen = null;
+		if(a.firstChild[node] == NodeArena.none && !a.isExpanded(node) && !(depth == this.treeDepth)) {
+			gen = this.generators[depth];
+			gen.init(a.board[node], type, true, true);
+			addNextChild(node, NodeArena.none, gen);
+		}
+		if(a.firstChild[node] == NodeArena.none) {
+			a.staticEst[node] = BatchEvaluator.getOpeningEstimate(a.board[node]);
+			a.setEvaluated(node);
+			store(node);
+			if(type == 'w') {
+				if(a.staticEst[node] < a.minStaticEst[parent]) {
+					a.minStaticEst[parent] = a.staticEst[node];
+				}
+			} else {
+				if(a.staticEst[node] > a.maxStaticEst[parent]) {
+					a.maxStaticEst[parent] = a.staticEst[node];
 				}
 			}
 			this.posEvalCnt++;
-		} else {
-			if(node.staticEval) {
-				if(node.type == 'w') {
-					if(node.staticEst < node.parent.minStaticEst) {
-						node.parent.minStaticEst = node.staticEst;
+			this.stats.eval();
+			return;
+		}
+
+		if(depth != 0)
+			gen = searchPvFirst(node, gen);
+		int best = (type == 'w') ? -10000000 : 10000000;
+		int i = 0;
+		for(int child = a.firstChild[node]; child != NodeArena.none; child = a.nextSibling[child], i++) {
+			applyABMinMax(child);
+			if(a.isEvaluated(child) && ((type == 'w') ? a.staticEst[child] > best : a.staticEst[child] < best)) {
+				best = a.staticEst[child];
+				this.pv.update(depth, a.board[child]);
+			}
+			if(depth != 0) {
+				if(type == 'w') {
+					if(a.maxStaticEst[node] > a.minStaticEst[parent]) {
+						this.stats.cutoff(depth, i);
+						return;
 					}
 				} else {
-					if(node.staticEst > node.parent.maxStaticEst) {
-						node.parent.maxStaticEst = node.staticEst;
+					if(a.minStaticEst[node] < a.maxStaticEst[parent]) {
+						this.stats.cutoff(depth, i);
+						return;
 					}
 				}
-				return;
-			} else {
-				for(int i = 0; i < node.children.size(); i++) {
-					applyABMinMax(node.children.get(i));
-					if(node.depth != 0) {
-						if(node.type == 'w') {
-							if(node.maxStaticEst > node.parent.minStaticEst) {
-								return;
-							}
-						} else {
-							if(node.minStaticEst < node.parent.maxStaticEst) {
-								return;
-							}
-						}
-					}	
-				}
-				if(node.type == 'w') {
-					node.staticEst = node.maxStaticEst;
-					node.staticEval = true;
-					if(node.depth != 0) {
-						if(node.staticEst < node.parent.minStaticEst) {
-							node.parent.minStaticEst = node.staticEst;
-						}
-					}	
-				} else {
-					node.staticEst = node.minStaticEst;
-					node.staticEval = true;
-					if(node.depth != 0) {
-						if(node.staticEst > node.parent.maxStaticEst) {
-							node.parent.maxStaticEst = node.staticEst;
-						}
-					}	
+			}
+			if(a.nextSibling[child] == NodeArena.none && !a.isExpanded(node)) {
+				if(gen == null) {
+					gen = this.generators[depth];
+					gen.init(a.board[node], type, true, true);
+					gen.skip(i + 1);
 				}
+				addNextChild(node, child, gen);
 			}
-			if(node.depth == 0) {
-				for(int i = 0;i < node.children.size(); i++) {
-					if(node.children.get(i).staticEst == node.staticEst) {
-						copyBoard(node.children.get(i).board, node.board);
-						break;
-					}
+		}
+		if(type == 'w') {
+			a.staticEst[node] = a.maxStaticEst[node];
+			a.setEvaluated(node);
+			store(node);
+			if(depth != 0) {
+				if(a.staticEst[node] < a.minStaticEst[parent]) {
+					a.minStaticEst[parent] = a.staticEst[node];
+				}
+			}
+		} else {
+			a.staticEst[node] = a.minStaticEst[node];
+			a.setEvaluated(node);
+			store(node);
+			if(depth != 0) {
+				if(a.staticEst[node] > a.maxStaticEst[parent]) {
+					a.maxStaticEst[parent] = a.staticEst[node];
 				}
 			}
 		}
+		if(depth == 0 && this.pv.getMove() != MoveGenerator.none)
+			PackedBoard.unpack(this.pv.getMove(), this.outBoard);
 	}
 
-	private int getOccCnt(char[] board, char c) {
-		int cnt = 0;
-		for(char a: board) {
-			if(a == c)
+	/**
+	 * This method returns the principal variation of the last search: the estimate of the root, and the boards of the moves expected from it down to the depth limit.
+	 * The variation is the one kept in the PvTable, carried on from the transposition table where it ends at a board the search took from the table.
+	 * @return
+	 */
+	public PvLine getPv() {
+		int estimate = this.arena.staticEst[this.root];
+		return new PvLine(estimate, this.pv.getLine(estimate, this.treeDepth, this.tt, this.generators[0], true));
+	}
+
+	/**
+	 * This method moves the child the variation of the last search expects from the given node, if the node is on it, to the front of the children.
+	 * Children are generated until that child is there, so the children of the node are still the first ones of the generator, and the generation carries on after them as usual.
+	 * It returns the generator, which is set up here if the node didn't have one yet and more children had to be generated.
+	 * @param node
+	 * @param gen
+	 * @return
+	 */
+	private MoveGenerator searchPvFirst(int node, MoveGenerator gen) {
+		NodeArena a = this.arena;
+		int depth = a.depth[node];
+		long hint = this.pv.getHint(depth, a.board[node]);
+		if(hint == MoveGenerator.none)
+			return gen;
+		int cnt = 0, last = NodeArena.none, prev = NodeArena.none, found = NodeArena.none;
+		for(int c = a.firstChild[node]; c != NodeArena.none; c = a.nextSibling[c], cnt++) {
+			if(a.board[c] == hint) {
+				found = c;
+				prev = last;
+			}
+			last = c;
+		}
+		while(found == NodeArena.none && !a.isExpanded(node)) {
+			if(gen == null) {
+				gen = this.generators[depth];
+				gen.init(a.board[node], a.getType(node), true, true);
+				gen.skip(cnt);
+			}
+			addNextChild(node, last, gen);
+			if(a.nextSibling[last] != NodeArena.none) {
+				prev = last;
+				last = a.nextSibling[last];
 				cnt++;
+				if(a.board[last] == hint)
+					found = last;
+			}
 		}
-		return cnt;
+		if(found != NodeArena.none && prev != NodeArena.none) {
+			a.nextSibling[prev] = a.nextSibling[found];
+			a.nextSibling[found] = a.firstChild[node];
+			a.firstChild[node] = found;
+		}
+		return gen;
 	}
 
 	/**
-	 * This method takes a node as input, and calculates all the possible moves under it till the input tree depth.
-	 * This method is initially invoked by the root node of the tree, and it gets recursively invoked for every other node of the tree as well.
+	 * This method contains the enhanced transposition cutoff. Before the children of the given node are searched, every child board is looked up in the transposition table.
+	 * If the stored value of one of them already beats the bound of the parent, the node would be cut off once the search got to that child, so it is cut off at once.
+	 * The children are only generated as packed boards for this, they are not added to the tree.
 	 * @param node
+	 * @return
 	 */
-	public void findBestOutputBoard(Node node) {
-//		char[] selBoard = new char[23];
-		if(node.depth == this.treeDepth) {
-//			node.staticEst = getStaticEstimate(node.board);
-//			copyBoard(node.board, selBoard);
-//			this.posEvalCnt++;
-		} else {
-//			if(node.type == 'w')
-//				node.staticEst = Integer.MIN_VALUE;
-//			else if(node.type == 'b')
-//				node.staticEst = Integer.MAX_VALUE;
-			
-			for(char[] l: generatePossibleBoards(node)) {
-				Node child = new Node();
-				child.depth = node.depth + 1;
-				child.type = (node.type == 'w' ? 'b' : 'w');
-				child.parent = node;
-				node.children.add(child);
-				copyBoard(l, child.board);
-				
-				findBestOutputBoard(child);
-				
-				if(node.type == 'w') {
-//					if(child.staticEst > node.staticEst) {
-//						node.staticEst = child.staticEst;
-//						selBoard = child.board;
-//					}
-				} else {
-//					if(child.staticEst < node.staticEst) {
-//						node.staticEst = child.staticEst;
-//						selBoard = child.board;
-//					}
+	private boolean isTranspositionCutoff(int node) {
+		NodeArena a = this.arena;
+		int depth = a.depth[node];
+		if(depth == 0)
+			return false;
+		int parent = a.parent[node];
+		char type = a.getType(node);
+		MoveGenerator gen = this.generators[depth];
+		gen.init(a.board[node], type, true, false);
+		for(long board = gen.next(); board != MoveGenerator.none; board = gen.next()) {
+			int slot = this.tt.find(TranspositionTable.getKey(board, depth + 1, this.treeDepth - depth - 1));
+			this.stats.ttProbe(slot != TranspositionTable.none);
+			if(slot == TranspositionTable.none)
+				continue;
+			int value = this.tt.getValue(slot);
+			if((type == 'w') ? value > a.minStaticEst[parent] : value < a.maxStaticEst[parent]) {
+				this.stats.transpositionCutoff(depth);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * This method looks the given node up in the transposition table. On a hit the node takes the stored value and is marked evaluated.
+	 * The root is never looked up, since its best move has to be picked from its own children.
+	 * @param node
+	 * @return
+	 */
+	private boolean probe(int node) {
+		NodeArena a = this.arena;
+		if(a.depth[node] == 0)
+			return false;
+		int slot = this.tt.find(TranspositionTable.getKey(a.board[node], a.depth[node], this.treeDepth - a.depth[node]));
+		this.stats.ttProbe(slot != TranspositionTable.none);
+		if(slot == TranspositionTable.none)
+			return false;
+		a.staticEst[node] = this.tt.getValue(slot);
+		a.setEvaluated(node);
+		return true;
+	}
+
+	/**
+	 * This method looks the given node up in the book, when the plies left below it match the depth the book was solved to.
+	 * On a hit the node takes the value of the book and is marked evaluated. The root is never looked up, as for the transposition table.
+	 * @param node
+	 * @return
+	 */
+	private boolean probeBook(int node) {
+		NodeArena a = this.arena;
+		if(this.book == null || a.depth[node] == 0 || this.treeDepth - a.depth[node] != this.book.depth)
+			return false;
+		ProbeEvent event = this.stats.beginProbe();
+		int value = this.book.probe(a.board[node], a.getType(node));
+		this.stats.endProbe(event, "OpeningBook", a.board[node], a.depth[node], value != OpeningBook.unknown);
+		if(value == OpeningBook.unknown)
+			return false;
+		a.staticEst[node] = value;
+		a.setEvaluated(node);
+		return true;
+	}
+
+	private void store(int node) {
+		NodeArena a = this.arena;
+		if(a.depth[node] != 0)
+			this.tt.put(TranspositionTable.getKey(a.board[node], a.depth[node], this.treeDepth - a.depth[node]), a.staticEst[node]);
+	}
+
+	/**
+	 * This method adds the next board of the generator as the child after prev, or as the first child when prev is none.
+	 * When the generator has no more boards, the node is marked expanded instead.
+	 * @param node
+	 * @param prev
+	 * @param gen
+	 */
+	private void addNextChild(int node, int prev, MoveGenerator gen) {
+		NodeArena a = this.arena;
+		long board = gen.next();
+		if(board == MoveGenerator.none) {
+			a.setExpanded(node);
+			return;
+		}
+		int child = a.newNode(board, node, a.depth[node] + 1);
+		if(prev == NodeArena.none)
+			a.firstChild[node] = child;
+		else
+			a.nextSibling[prev] = child;
+	}
+
+	/**
+	 * This method generates all the children of the root in the order of generatePossibleBoards, so that the move picked among equally good ones stays the same.
+	 * Children kept from an earlier search are linked in again in that order instead of being added twice.
+	 * @param node
+	 */
+	private void expandRoot(int node) {
+		NodeArena a = this.arena;
+		int cnt = 0;
+		for(int c = a.firstChild[node]; c != NodeArena.none; c = a.nextSibling[c]) {
+			if(cnt == this.rootChildren.length)
+				this.rootChildren = Arrays.copyOf(this.rootChildren, 2 * cnt);
+			this.rootChildren[cnt++] = c;
+		}
+		MoveGenerator gen = this.generators[0];
+		gen.init(a.board[node], a.getType(node), true, false);
+		a.firstChild[node] = NodeArena.none;
+		int prev = NodeArena.none;
+		for(long board = gen.next(); board != MoveGenerator.none; board = gen.next()) {
+			int child = NodeArena.none;
+			for(int k = 0; k < cnt; k++) {
+				if(a.board[this.rootChildren[k]] == board) {
+					child = this.rootChildren[k];
+					break;
 				}
 			}
+			if(child == NodeArena.none)
+				child = a.newNode(board, node, 1);
+			a.nextSibling[child] = NodeArena.none;
+			if(prev == NodeArena.none)
+				a.firstChild[node] = child;
+			else
+				a.nextSibling[prev] = child;
+			prev = child;
 		}
-		
-//		if(node.depth == 0)
-//			copyBoard(selBoard, node.board);
+		a.setExpanded(node);
+	}
+
+	private int getOccCnt(char[] board, char c) {
+		int cnt = 0;
+		for(char a: board) {
+			if(a == c)
+				cnt++;
+		}
+		return cnt;
 	}
+
 	
 	/**
-	 * This method takes a node as input and generates and returns all boards possible from the given input node's board.
-	 * @param node
+	 * This method generates and returns all boards possible from the given input board, with the given side to move.
+	 * @param board
+	 * @param type
 	 * @return
 	 */
-	private List<char[]> generatePossibleBoards(Node node) {
+	private List<char[]> generatePossibleBoards(char[] board, char type) {
 		List<char[]> L = new ArrayList<char[]>();
 
 		for(int i = 0; i < posCnt; i++) {
-			if(node.board[i] == 'x') {
+			if(board[i] == 'x') {
 				char[] newBoard = new char[23];
-				copyBoard(node.board, newBoard);
+				copyBoard(board, newBoard);
 				
-				newBoard[i] = node.type;
+				newBoard[i] = type;
 				
 				if(isCloseMill(newBoard, i)) {
 					for(int j = 0; j < 23; j++) {
-						if(newBoard[j] != node.type && newBoard[j] != 'x') {
+						if(newBoard[j] != type && newBoard[j] != 'x') {
 							char[] tempBoard = new char[23];
 							copyBoard(newBoard, tempBoard);
 							if(!isCloseMill(tempBoard, j)) {
 								tempBoard[j] = 'x';
 								L.add(tempBoard);
 							} else {
-								if(getOccCnt(tempBoard, (node.type=='w')?'b':'w') == 3) {
+								if(getOccCnt(tempBoard, (type=='w')?'b':'w') == 3) {
 									tempBoard[j] = 'x';
 									L.add(tempBoard);
 								}
@@ -465,7 +731,7 @@ public class ABOpening {
 	public void printResult(String outputFilePath) throws IOException {
 		BufferedWriter bw = new BufferedWriter(new FileWriter(outputFilePath));
 		String inBoardStr = getBoardString(this.inBoard);
-		String outBoardStr = getBoardString(this.root.board);
+		String outBoardStr = getBoardString(this.outBoard);
 		inBoardStr = upperWB(inBoardStr);
 		outBoardStr = upperWB(outBoardStr);
 		bw.write(outBoardStr);
@@ -474,7 +740,13 @@ public class ABOpening {
 		System.out.println("Input Board: "+inBoardStr);
 		System.out.println("Board Position: "+outBoardStr);
 		System.out.println("Positions evaluated by static estimation: "+this.posEvalCnt);
-		System.out.println("MINIMAX Estimate: "+this.root.staticEst);
+		System.out.println("MINIMAX Estimate: "+this.arena.staticEst[this.root]);
+		if(this.printPv) {
+			PvLine line = getPv();
+			System.out.println("PV: estimate "+line.getEstimate()+", line "+line);
+		}
+		if(this.logStats)
+			this.stats.print(System.out);
 	}
 	
 	private String upperWB(String board) {
@@ -0,0 +1,173 @@
+/**
+ * @author sivakarthik
+ * This class contains logic to compute the static estimates of the engines on packed boards, for a whole array of boards in one pass.
+ * Material, pieces in mills and mobility are worked out with bit operations on the piece masks, instead of unpacking the board and generating the moves as lists.
+ * The mobility of a side is the number of boards its generator would return: a move that closes a mill counts once for every piece it can capture.
+ * Every estimate matches the getStaticEstimate of the engine it is named after.
+ */
+public class BatchEvaluator {
+
+	public static final int game = 0;
+	public static final int gameImproved = 1;
+	public static final int opening = 2;
+	public static final int openingImproved = 3;
+
+	private BatchEvaluator() {
+
+	}
+
+	/**
+	 * This method computes the estimate of the given kind for the first cnt boards, and saves them in est.
+	 * @param kind
+	 * @param boards
+	 * @param cnt
+	 * @param est
+	 */
+	public static void evaluate(int kind, long[] boards, int cnt, int[] est) {
+		switch(kind) {
+		case game:
+			for(int i = 0; i < cnt; i++) {
+				est[i] = getGameEstimate(boards[i]);
+			}
+			break;
+		case gameImproved:
+			for(int i = 0; i < cnt; i++) {
+				est[i] = getGameImprovedEstimate(boards[i]);
+			}
+			break;
+		case opening:
+			for(int i = 0; i < cnt; i++) {
+				est[i] = getOpeningEstimate(boards[i]);
+			}
+			break;
+		case openingImproved:
+			for(int i = 0; i < cnt; i++) {
+				est[i] = getOpeningImprovedEstimate(boards[i]);
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown estimate: "+kind);
+		}
+	}
+
+	/**
+	 * This method returns the estimate of MiniMaxGame and ABGame: the material difference, less the number of black moves.
+	 * @param packed
+	 * @return
+	 */
+	public static int getGameEstimate(long packed) {
+		int w = PackedBoard.getWhite(packed);
+		int b = PackedBoard.getBlack(packed);
+		int wCnt = Integer.bitCount(w);
+		int bCnt = Integer.bitCount(b);
+		if(bCnt <= 2)
+			return 10000;
+		if(wCnt <= 2)
+			return -10000;
+		int numBlkMoves = countMoves(b, w, false);
+		if(numBlkMoves == 0)
+			return 10000;
+		return (1000*(wCnt - bCnt)) - numBlkMoves;
+	}
+
+	/**
+	 * This method returns the estimate of MiniMaxGameImproved: the material difference, and the difference of the number of moves of both sides.
+	 * @param packed
+	 * @return
+	 */
+	public static int getGameImprovedEstimate(long packed) {
+		int w = PackedBoard.getWhite(packed);
+		int b = PackedBoard.getBlack(packed);
+		int wCnt = Integer.bitCount(w);
+		int bCnt = Integer.bitCount(b);
+		if(bCnt <= 2)
+			return 10000;
+		if(wCnt <= 2)
+			return -10000;
+		int numBlkMoves = countMoves(b, w, false);
+		if(numBlkMoves == 0)
+			return 10000;
+		int numWhtMoves = countMoves(w, b, false);
+		if(numWhtMoves == 0)
+			return -10000;
+		return (1000*(wCnt - bCnt)) + (10*(numWhtMoves - numBlkMoves));
+	}
+
+	/**
+	 * This method returns the estimate of MiniMaxOpening and ABOpening, the material difference.
+	 * @param packed
+	 * @return
+	 */
+	public static int getOpeningEstimate(long packed) {
+		return PackedBoard.getWhiteCnt(packed) - PackedBoard.getBlackCnt(packed);
+	}
+
+	/**
+	 * This method returns the estimate of MiniMaxOpeningImproved: the material difference, and the difference of the number of pieces in mills of both sides, divided by three.
+	 * @param packed
+	 * @return
+	 */
+	public static int getOpeningImprovedEstimate(long packed) {
+		int w = PackedBoard.getWhite(packed);
+		int b = PackedBoard.getBlack(packed);
+		int wMill = Integer.bitCount(Bitboard.getMillPieces(w)) / 3;
+		int bMill = Integer.bitCount(Bitboard.getMillPieces(b)) / 3;
+		return (Integer.bitCount(w) - Integer.bitCount(b)) + (wMill - bMill);
+	}
+
+	/**
+	 * This method returns the number of boards the generator returns for the side with the given pieces, placements with opening set and moves otherwise.
+	 * All moves are counted at once from the masks. The ones that close a mill are then found from the mills that miss a single piece,
+	 * and count once per capturable piece instead of once.
+	 * As in the generators, there are no moves in the game phase once white has less than three pieces, which the callers rule out before.
+	 * @param own
+	 * @param other
+	 * @param opening
+	 * @return
+	 */
+	public static int countMoves(int own, int other, boolean opening) {
+		int empty = ~(own | other) & Bitboard.posMask;
+		boolean flying = !opening && Integer.bitCount(own) == 3;
+		int moveCnt;
+		if(opening) {
+			moveCnt = Integer.bitCount(empty);
+		} else if(flying) {
+			moveCnt = Integer.bitCount(own) * Integer.bitCount(empty);
+		} else {
+			moveCnt = 0;
+			for(int s = own; s != 0; s &= s - 1) {
+				moveCnt += Integer.bitCount(Bitboard.neighbours[Integer.numberOfTrailingZeros(s)] & empty);
+			}
+		}
+
+		int closing = 0;
+		for(int m: Bitboard.mills) {
+			int rest = m & ~own;
+			if((rest & (rest - 1)) == 0 && (rest & empty) != 0)
+				closing |= rest;
+		}
+		if(closing == 0)
+			return moveCnt;
+
+		int millMoveCnt = 0;
+		for(int t = closing; t != 0; t &= t - 1) {
+			int to = Integer.numberOfTrailingZeros(t);
+			if(opening) {
+				millMoveCnt++;
+				continue;
+			}
+			int sources = flying ? own : Bitboard.neighbours[to] & own;
+			int closed = 0, closedCnt = 0;
+			for(int m: Bitboard.millsAt[to]) {
+				if((own & m) == (m & ~(1 << to))) {
+					closed = m;
+					closedCnt++;
+				}
+			}
+			millMoveCnt += Integer.bitCount(closedCnt == 1 ? sources & ~closed : sources);
+		}
+		int capturable = (Integer.bitCount(other) == 3) ? other : other & ~Bitboard.getMillPieces(other);
+		return moveCnt + millMoveCnt * (Integer.bitCount(capturable) - 1);
+	}
+
+}
@@ -0,0 +1,231 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author sivakarthik
+ * This class contains a micro benchmark harness for the hot paths of the engines: move generation, mill detection, neighbour lookup and static estimation.
+ * Every benchmark runs over the boards read from the inputBoard*.txt fixtures and reports the time and the heap bytes allocated per operation.
+ */
+public class Benchmark {
+
+	public static final int posCnt = 23;
+	static final int warmupIterations = 5;
+	static final int measureIterations = 10;
+	static final long iterationNanos = 200000000L;
+
+	List<String> boardNames = new ArrayList<String>();
+	List<char[]> boards = new ArrayList<char[]>();
+	MiniMaxOpening opening = new MiniMaxOpening();
+	MiniMaxOpeningImproved openingImproved = new MiniMaxOpeningImproved();
+	MiniMaxGame game = new MiniMaxGame();
+	MiniMaxGameImproved gameImproved = new MiniMaxGameImproved();
+	com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	long sink = 0;
+
+	/**
+	 * A single benchmarked operation. Each invocation works on the fixture board with the given index.
+	 */
+	abstract static class Op {
+		String name;
+
+		Op(String name) {
+			this.name = name;
+		}
+
+		abstract long run(char[] board);
+	}
+
+	public Benchmark() {
+
+	}
+
+	/**
+	 * This method reads the fixture boards. If no board files are passed in, every inputBoard*.txt of the current directory is used.
+	 * @param args
+	 * @throws IOException
+	 */
+	public void initialize(String[] args) throws IOException {
+		String[] files = args;
+		if(files.length == 0) {
+			files = new File(".").list(new FilenameFilter() {
+				public boolean accept(File dir, String name) {
+					return name.startsWith("inputBoard") && name.endsWith(".txt");
+				}
+			});
+			Arrays.sort(files);
+		}
+		for(String file: files) {
+			BufferedReader br = new BufferedReader(new FileReader(file));
+			String boardStr = br.readLine().trim().toLowerCase();
+			br.close();
+			if(boardStr.length() != posCnt) {
+				System.out.println("Skipping invalid board file: "+file);
+				continue;
+			}
+			this.boardNames.add(file);
+			this.boards.add(boardStr.toCharArray());
+		}
+		if(this.boards.size() == 0) {
+			System.out.println("No input boards found. Pass inputboard paths or run from the directory holding inputBoard*.txt.");
+			System.exit(1);
+		}
+	}
+
+	private Node newNode(char[] board, char type) {
+		Node n = new Node();
+		for(int i = 0; i < posCnt; i++) {
+			n.board[i] = board[i];
+		}
+		n.type = type;
+		return n;
+	}
+
+	/**
+	 * This method lists all the benchmarked operations.
+	 * @return
+	 */
+	private List<Op> getOps() {
+		List<Op> ops = new ArrayList<Op>();
+		ops.add(new Op("generatePossibleBoards (opening)") {
+			long run(char[] board) {
+				return opening.generatePossibleBoards(newNode(board, 'w')).size();
+			}
+		});
+		ops.add(new Op("generatePossibleBoards (midgame)") {
+			long run(char[] board) {
+				return game.generatePossibleBoards(newNode(board, 'w')).size();
+			}
+		});
+		ops.add(new Op("isCloseMill (all positions)") {
+			long run(char[] board) {
+				long cnt = 0;
+				for(int i = 0; i < posCnt; i++) {
+					if(game.isCloseMill(board, i))
+						cnt++;
+				}
+				return cnt;
+			}
+		});
+		ops.add(new Op("getNeighbour (all positions)") {
+			long run(char[] board) {
+				long cnt = 0;
+				for(int i = 0; i < posCnt; i++) {
+					cnt += game.getNeighbour(i).size();
+				}
+				return cnt;
+			}
+		});
+		ops.add(new Op("getStaticEstimate (MiniMaxOpening)") {
+			long run(char[] board) {
+				return opening.getStaticEstimate(board);
+			}
+		});
+		ops.add(new Op("getStaticEstimate (MiniMaxOpeningImproved)") {
+			long run(char[] board) {
+				return openingImproved.getStaticEstimate(board);
+			}
+		});
+		ops.add(new Op("getStaticEstimate (MiniMaxGame)") {
+			long run(char[] board) {
+				return game.getStaticEstimate(board);
+			}
+		});
+		ops.add(new Op("getStaticEstimate (MiniMaxGameImproved)") {
+			long run(char[] board) {
+				return gameImproved.getStaticEstimate(board);
+			}
+		});
+		ops.add(new Op("BatchEvaluator (game, packing included)") {
+			long run(char[] board) {
+				return BatchEvaluator.getGameEstimate(PackedBoard.pack(board));
+			}
+		});
+		ops.add(new Op("BatchEvaluator (game improved, packing included)") {
+			long run(char[] board) {
+				return BatchEvaluator.getGameImprovedEstimate(PackedBoard.pack(board));
+			}
+		});
+		return ops;
+	}
+
+	/**
+	 * This method runs the given operation over all fixture boards until the iteration time is used up.
+	 * It returns the number of operations done, and fills in the elapsed nanos and allocated bytes.
+	 * @param op
+	 * @param result
+	 * @return
+	 */
+	private long runIteration(Op op, long[] result) {
+		long tid = Thread.currentThread().getId();
+		long ops = 0;
+		long startBytes = this.threadBean.getThreadAllocatedBytes(tid);
+		long start = System.nanoTime();
+		long end = start + iterationNanos;
+		long now;
+		do {
+			for(int i = 0; i < this.boards.size(); i++) {
+				this.sink += op.run(this.boards.get(i));
+			}
+			ops += this.boards.size();
+			now = System.nanoTime();
+		} while(now < end);
+		result[0] = now - start;
+		result[1] = this.threadBean.getThreadAllocatedBytes(tid) - startBytes;
+		return ops;
+	}
+
+	/**
+	 * This method contains the warmup and the measurement loop for every operation, and prints one line of results per operation.
+	 */
+	public void run() {
+		this.threadBean.setThreadAllocatedMemoryEnabled(true);
+		System.out.println("Boards: "+this.boardNames);
+		System.out.println(String.format("%-45s %12s %12s %14s", "Benchmark", "ns/op", "+-", "bytes/op"));
+		long[] result = new long[2];
+		for(Op op: getOps()) {
+			for(int i = 0; i < warmupIterations; i++) {
+				runIteration(op, result);
+			}
+			double[] nsPerOp = new double[measureIterations];
+			long totalOps = 0, totalBytes = 0;
+			for(int i = 0; i < measureIterations; i++) {
+				long ops = runIteration(op, result);
+				nsPerOp[i] = (double) result[0] / ops;
+				totalOps += ops;
+				totalBytes += result[1];
+			}
+			double mean = 0, var = 0;
+			for(double d: nsPerOp) {
+				mean += d;
+			}
+			mean /= measureIterations;
+			for(double d: nsPerOp) {
+				var += (d - mean) * (d - mean);
+			}
+			double err = Math.sqrt(var / (measureIterations - 1));
+			System.out.println(String.format("%-45s %12.1f %12.1f %14.1f", op.name, mean, err, (double) totalBytes / totalOps));
+		}
+		if(this.sink == 42) {
+			System.out.println();
+		}
+	}
+
+	/**
+	 * This is the main method. Optional arguments are inputboard paths, otherwise the inputBoard*.txt fixtures of the current directory are used.
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String args[]) throws IOException {
+		Benchmark b = new Benchmark();
+		b.initialize(args);
+		b.run();
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ * @author sivakarthik
+ * This class contains the board geometry as bit masks: the neighbours of every position and the mills.
+ * Bit i of a mask stands for position i, so the pieces of one side fit in an int, the same layout as the halves of a packed board.
+ */
+public class Bitboard {
+
+	public static final int posCnt = 23;
+	public static final int posMask = (1 << posCnt) - 1;
+
+	static final int[] neighbours = new int[posCnt];
+	static final int[] mills = {
+		mask(0, 1, 2), mask(0, 3, 6), mask(0, 8, 20), mask(2, 5, 7), mask(2, 13, 22), mask(3, 4, 5),
+		mask(3, 9, 17), mask(5, 12, 19), mask(6, 10, 14), mask(7, 11, 16), mask(8, 9, 10), mask(11, 12, 13),
+		mask(14, 15, 16), mask(14, 17, 20), mask(15, 18, 21), mask(16, 19, 22), mask(17, 18, 19), mask(20, 21, 22)
+	};
+	static final int[][] millsAt = new int[posCnt][];
+	static final int[] mirrorPos = {2, 1, 0, 5, 4, 3, 7, 6, 13, 12, 11, 10, 9, 8, 16, 15, 14, 19, 18, 17, 22, 21, 20};
+
+	static {
+		int[][] nbrs = {
+			{1, 3, 8}, {0, 2, 4}, {1, 5, 13}, {0, 4, 6, 9}, {1, 3, 5}, {2, 4, 7, 12}, {3, 7, 10}, {5, 6, 11},
+			{0, 9, 20}, {3, 8, 10, 17}, {6, 9, 14}, {7, 12, 16}, {5, 11, 13, 19}, {2, 12, 22}, {10, 15, 17}, {14, 16, 18},
+			{11, 15, 19}, {9, 14, 18, 20}, {15, 17, 19, 21}, {12, 16, 18, 22}, {8, 17, 21}, {18, 20, 22}, {13, 19, 21}
+		};
+		for(int i = 0; i < posCnt; i++) {
+			neighbours[i] = mask(nbrs[i]);
+			int cnt = 0;
+			for(int m: mills) {
+				if((m & (1 << i)) != 0)
+					cnt++;
+			}
+			millsAt[i] = new int[cnt];
+			cnt = 0;
+			for(int m: mills) {
+				if((m & (1 << i)) != 0)
+					millsAt[i][cnt++] = m;
+			}
+		}
+	}
+
+	private Bitboard() {
+
+	}
+
+	static int mask(int... positions) {
+		int m = 0;
+		for(int p: positions) {
+			m |= 1 << p;
+		}
+		return m;
+	}
+
+	/**
+	 * This method checks if the piece on the given position is part of a mill of the given pieces.
+	 * @param pieces
+	 * @param pos
+	 * @return
+	 */
+	public static boolean isInMill(int pieces, int pos) {
+		for(int m: millsAt[pos]) {
+			if((pieces & m) == m)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * This method returns the mask of all the given pieces that are part of a mill.
+	 * @param pieces
+	 * @return
+	 */
+	public static int getMillPieces(int pieces) {
+		int inMill = 0;
+		for(int m: mills) {
+			if((pieces & m) == m)
+				inMill |= m;
+		}
+		return inMill;
+	}
+
+	/**
+	 * This method returns the given pieces reflected left to right. The reflection keeps the neighbours and the mills, and is the only symmetry of the board.
+	 * @param pieces
+	 * @return
+	 */
+	public static int mirror(int pieces) {
+		int m = 0;
+		for(int s = pieces; s != 0; s &= s - 1) {
+			m |= 1 << mirrorPos[Integer.numberOfTrailingZeros(s)];
+		}
+		return m;
+	}
+
+}
@@ -0,0 +1,109 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author sivakarthik
+ * This class holds the most recently used blocks of the compressed tablebase classes, already inflated, up to a fixed number of blocks.
+ * A block is named by its class and its number within the class. The blocks are spread over a number of stripes by their name,
+ * and every stripe is a map that keeps its blocks in order of use, and drops the least recently used one when it is full.
+ * It is shared by all the threads that probe the tablebase. A lookup only takes the lock of its stripe, so the threads of a parallel build rarely wait for each other.
+ * A value is read under that lock, so a block dropped from the cache is not read by anyone any more, and can be handed back to be filled again.
+ */
+public class BlockCache {
+
+	public static final int stripeCnt = 16;
+	public static final int missing = Integer.MIN_VALUE;
+
+	/**
+	 * This class is one stripe of the cache. It remembers the block it dropped last, so put can hand it back.
+	 */
+	static class Stripe extends LinkedHashMap<Long, short[]> {
+		int capacity;
+		short[] dropped;
+
+		Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<Long, short[]> eldest) {
+			if(size() > this.capacity) {
+				this.dropped = eldest.getValue();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	int capacity;
+	Stripe[] stripes = new Stripe[stripeCnt];
+	LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+	/**
+	 * The capacity is shared evenly by the stripes, so the cache can hold a few blocks more than asked for when it doesn't divide evenly.
+	 * @param capacity
+	 */
+	public BlockCache(int capacity) {
+		this.capacity = capacity;
+		for(int i = 0; i < stripeCnt; i++) {
+			this.stripes[i] = new Stripe((capacity + stripeCnt - 1) / stripeCnt);
+		}
+	}
+
+	static long getKey(int classId, int block) {
+		return ((long) classId << 32) | block;
+	}
+
+	private Stripe getStripe(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return this.stripes[(int) (h >>> 60) & (stripeCnt - 1)];
+	}
+
+	/**
+	 * This method returns the value at the given place of the given block of the given class, or missing if the block is not in the cache.
+	 * @param classId
+	 * @param block
+	 * @param offset
+	 * @return
+	 */
+	public int getValue(int classId, int block, int offset) {
+		long key = getKey(classId, block);
+		Stripe s = getStripe(key);
+		synchronized(s) {
+			short[] values = s.get(key);
+			if(values != null) {
+				this.hits.increment();
+				return values[offset];
+			}
+		}
+		this.misses.increment();
+		return missing;
+	}
+
+	/**
+	 * This method adds the given block of the given class to the cache. It returns the block this dropped or replaced, which nobody reads any more, or null.
+	 * @param classId
+	 * @param block
+	 * @param values
+	 * @return
+	 */
+	public short[] put(int classId, int block, short[] values) {
+		long key = getKey(classId, block);
+		Stripe s = getStripe(key);
+		synchronized(s) {
+			s.dropped = null;
+			short[] replaced = s.put(key, values);
+			return (replaced != null) ? replaced : s.dropped;
+		}
+	}
+
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+}
@@ -0,0 +1,347 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @author sivakarthik
+ * This class contains logic to write a class of the Tablebase to a block-compressed file, and to read single values back from it.
+ * The values are cut into blocks of a fixed number of positions, and every block is deflated on its own, so a probe only inflates the block its position falls in.
+ * The file holds the blocks, then the offset of every block and of the end of the last one, which is the block index, and a short trailer with the class and the block size.
+ * Only the index is kept in memory, and only sparsely: the full offset of every group of blocks, and the offset of each block from the start of its group in a char.
+ * The inflated blocks go to a BlockCache shared by the classes. Every thread inflates into its own buffers, and refills the blocks the cache drops, so a probe doesn't allocate.
+ * A class is written from a ValueSource, one block at a time, so it doesn't have to be in memory to be written either.
+ */
+public class CompressedTable {
+
+	public static final int magic = 0x54424331;
+	public static final int defaultBlockSize = 1024;
+	static final int trailerSize = 24;
+	static final int maxGroupShift = 6;
+
+	/**
+	 * This class holds the buffers one thread reads and inflates blocks with, and a block dropped from the cache that it can fill next.
+	 */
+	static class Scratch {
+		Inflater inflater = new Inflater(true);
+		byte[] packed = new byte[0];
+		ByteBuffer packedBuf = ByteBuffer.wrap(this.packed);
+		byte[] raw = new byte[0];
+		short[] spare;
+	}
+
+	static final ThreadLocal<Scratch> scratches = new ThreadLocal<Scratch>() {
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	/**
+	 * This interface gives the values of a class to write, by the number of the position. The writer asks for every position once, in order.
+	 */
+	public interface ValueSource {
+		short get(long index);
+	}
+
+	File file;
+	int moverCnt, otherCnt;
+	long size;
+	int blockSize, blockCnt;
+	int groupShift;
+	long[] groupOffsets;
+	char[] blockOffsets;
+	RandomAccessFile raf;
+	FileChannel channel;
+
+	/**
+	 * This method writes the given values of the class with the given piece counts to the given file, in blocks of the given number of positions.
+	 * @param f
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @param values
+	 * @param blockSize
+	 * @throws IOException
+	 */
+	public static void write(File f, int moverCnt, int otherCnt, final short[] values, int blockSize) throws IOException {
+		write(f, moverCnt, otherCnt, values.length, new ValueSource() {
+			public short get(long index) {
+				return values[(int) index];
+			}
+		}, blockSize);
+	}
+
+	/**
+	 * This method writes the class with the given piece counts and number of positions to the given file, in blocks of the given number of positions,
+	 * taking the values from the given source one block at a time.
+	 * @param f
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @param size
+	 * @param values
+	 * @param blockSize
+	 * @throws IOException
+	 */
+	public static void write(File f, int moverCnt, int otherCnt, long size, ValueSource values, int blockSize) throws IOException {
+		int blockCnt = (int) ((size + blockSize - 1) / blockSize);
+		long[] offsets = new long[blockCnt + 1];
+		byte[] raw = new byte[2 * blockSize];
+		byte[] packed = new byte[4 * blockSize];
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+		try {
+			long offset = 0;
+			for(int b = 0; b < blockCnt; b++) {
+				offsets[b] = offset;
+				long from = (long) b * blockSize;
+				int cnt = (int) Math.min(blockSize, size - from);
+				for(int i = 0; i < cnt; i++) {
+					short v = values.get(from + i);
+					raw[2 * i] = (byte) (v >> 8);
+					raw[2 * i + 1] = (byte) v;
+				}
+				deflater.reset();
+				deflater.setInput(raw, 0, 2 * cnt);
+				deflater.finish();
+				while(!deflater.finished()) {
+					int len = deflater.deflate(packed);
+					out.write(packed, 0, len);
+					offset += len;
+				}
+			}
+			offsets[blockCnt] = offset;
+			for(long o: offsets) {
+				out.writeLong(o);
+			}
+			out.writeInt(magic);
+			out.writeInt(moverCnt);
+			out.writeInt(otherCnt);
+			out.writeInt(blockSize);
+			out.writeLong(size);
+		} finally {
+			out.close();
+			deflater.end();
+		}
+	}
+
+	/**
+	 * This method opens the given compressed class file, and reads its block index.
+	 * @param f
+	 * @throws IOException
+	 */
+	public CompressedTable(File f) throws IOException {
+		this.file = f;
+		this.raf = new RandomAccessFile(f, "r");
+		this.channel = this.raf.getChannel();
+		long length = this.raf.length();
+		if(length < trailerSize)
+			throw new IOException(f+" is not a compressed tablebase class.");
+		this.raf.seek(length - trailerSize);
+		int m = this.raf.readInt();
+		this.moverCnt = this.raf.readInt();
+		this.otherCnt = this.raf.readInt();
+		this.blockSize = this.raf.readInt();
+		this.size = this.raf.readLong();
+		if(m != magic || this.blockSize <= 0 || this.moverCnt < Tablebase.minPieces || this.moverCnt > Tablebase.maxPieces
+				|| this.otherCnt < Tablebase.minPieces || this.otherCnt > Tablebase.maxPieces || this.size != Tablebase.getClassSize(this.moverCnt, this.otherCnt))
+			throw new IOException(f+" is not a compressed tablebase class.");
+		this.blockCnt = (int) ((this.size + this.blockSize - 1) / this.blockSize);
+		readIndex(length - trailerSize - 8L * (this.blockCnt + 1));
+	}
+
+	/**
+	 * This method reads the block index at the given position of the file, a part at a time, into the sparse index.
+	 * The groups are as large as they can be while no block of a group can start more than a char past the start of the group,
+	 * which holds as a block deflates to little more than its raw size. A file for which it doesn't hold is rejected.
+	 * @param position
+	 * @throws IOException
+	 */
+	private void readIndex(long position) throws IOException {
+		long maxLen = 2L * this.blockSize + 5 * (2L * this.blockSize / 16383 + 1) + 6;
+		this.groupShift = maxGroupShift;
+		while(this.groupShift > 0 && (maxLen << this.groupShift) > Character.MAX_VALUE)
+			this.groupShift--;
+		int cnt = this.blockCnt + 1;
+		this.groupOffsets = new long[((cnt - 1) >> this.groupShift) + 1];
+		this.blockOffsets = new char[cnt];
+		ByteBuffer buf = ByteBuffer.allocate(8 << 12);
+		for(int b = 0; b < cnt; ) {
+			buf.clear();
+			buf.limit(8 * Math.min(cnt - b, 1 << 12));
+			readFully(buf, position + 8L * b);
+			buf.flip();
+			while(buf.hasRemaining()) {
+				long offset = buf.getLong();
+				int group = b >> this.groupShift;
+				if((b & ((1 << this.groupShift) - 1)) == 0)
+					this.groupOffsets[group] = offset;
+				long relative = offset - this.groupOffsets[group];
+				if(relative < 0 || relative > Character.MAX_VALUE)
+					throw new IOException("The block index of "+this.file+" is broken.");
+				this.blockOffsets[b] = (char) relative;
+				b++;
+			}
+		}
+	}
+
+	/**
+	 * This method returns the offset of the given block in the file, or of the end of the last block for blockCnt.
+	 * @param block
+	 * @return
+	 */
+	long getOffset(int block) {
+		return this.groupOffsets[block >> this.groupShift] + this.blockOffsets[block];
+	}
+
+	private void readFully(ByteBuffer buf, long position) throws IOException {
+		while(buf.hasRemaining()) {
+			int len = this.channel.read(buf, position);
+			if(len < 0)
+				throw new IOException("Unexpected end of "+this.file);
+			position += len;
+		}
+	}
+
+	/**
+	 * This method reads and inflates the given block into a new array of its length.
+	 * @param block
+	 * @return
+	 * @throws IOException
+	 */
+	public short[] readBlock(int block) throws IOException {
+		short[] values = new short[(int) Math.min(this.blockSize, this.size - (long) block * this.blockSize)];
+		readBlock(block, values, scratches.get());
+		return values;
+	}
+
+	/**
+	 * This method reads and inflates the given block into the given array, with the buffers of the given scratch. The array has to have room for the block.
+	 * It reads at a position of the file, so any number of threads can read at once.
+	 * @param block
+	 * @param values
+	 * @param s
+	 * @throws IOException
+	 */
+	void readBlock(int block, short[] values, Scratch s) throws IOException {
+		long from = getOffset(block);
+		int len = (int) (getOffset(block + 1) - from);
+		if(s.packed.length < len) {
+			s.packed = new byte[Math.max(len, 2 * s.packed.length)];
+			s.packedBuf = ByteBuffer.wrap(s.packed);
+		}
+		s.packedBuf.clear();
+		s.packedBuf.limit(len);
+		readFully(s.packedBuf, from);
+		int cnt = (int) Math.min(this.blockSize, this.size - (long) block * this.blockSize);
+		if(s.raw.length < 2 * cnt)
+			s.raw = new byte[2 * cnt];
+		byte[] raw = s.raw;
+		Inflater inflater = s.inflater;
+		inflater.reset();
+		inflater.setInput(s.packed, 0, len);
+		try {
+			int done = 0;
+			while(done < 2 * cnt) {
+				int n = inflater.inflate(raw, done, 2 * cnt - done);
+				if(n == 0 && (inflater.finished() || inflater.needsInput()))
+					throw new IOException("Block "+block+" of "+this.file+" is cut short.");
+				done += n;
+			}
+		} catch(DataFormatException e) {
+			throw new IOException("Block "+block+" of "+this.file+" is broken.", e);
+		}
+		for(int i = 0; i < cnt; i++) {
+			values[i] = (short) ((raw[2 * i] << 8) | (raw[2 * i + 1] & 0xff));
+		}
+	}
+
+	/**
+	 * This method returns the value of the position with the given number, from the cache or else from its block, which then goes to the cache.
+	 * The block is inflated into one the cache dropped earlier on this thread when there is one.
+	 * @param index
+	 * @param cache
+	 * @return
+	 */
+	public int getValue(long index, BlockCache cache) {
+		int block = (int) (index / this.blockSize);
+		int offset = (int) (index % this.blockSize);
+		int classId = Tablebase.getClass(this.moverCnt, this.otherCnt);
+		int value = cache.getValue(classId, block, offset);
+		if(value != BlockCache.missing)
+			return value;
+		Scratch s = scratches.get();
+		short[] values = s.spare;
+		if(values == null || values.length != this.blockSize)
+			values = new short[this.blockSize];
+		try {
+			readBlock(block, values, s);
+		} catch(IOException e) {
+			throw new IllegalStateException("Can't read "+this.file, e);
+		}
+		value = values[offset];
+		s.spare = cache.put(classId, block, values);
+		return value;
+	}
+
+	/**
+	 * This method returns the number of bytes of the file.
+	 * @return
+	 */
+	public long getFileSize() {
+		return getOffset(this.blockCnt) + 8L * (this.blockCnt + 1) + trailerSize;
+	}
+
+	public void close() throws IOException {
+		this.raf.close();
+	}
+
+	/**
+	 * This is the main method. It takes a tablebase directory, and writes the compressed file of every class found there,
+	 * checks it against the class it came from, and prints the sizes.
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String args[]) throws Exception {
+		if(args.length != 1) {
+			System.out.println("Invalid Number of Arguments. Need tablebase directory");
+			System.exit(1);
+		}
+		File dir = new File(args[0]);
+		long rawTotal = 0, packedTotal = 0;
+		for(int m = Tablebase.minPieces; m <= Tablebase.maxPieces; m++) {
+			for(int o = Tablebase.minPieces; o <= Tablebase.maxPieces; o++) {
+				File rawFile = Tablebase.getFile(dir, m, o);
+				if(!rawFile.isFile())
+					continue;
+				short[] values = Tablebase.readClass(rawFile, m, o);
+				File f = Tablebase.getCompressedFile(dir, m, o);
+				write(f, m, o, values, defaultBlockSize);
+				CompressedTable t = new CompressedTable(f);
+				try {
+					for(int b = 0; b < t.blockCnt; b++) {
+						short[] block = t.readBlock(b);
+						for(int i = 0; i < block.length; i++) {
+							if(block[i] != values[b * t.blockSize + i])
+								throw new IllegalStateException(f+" doesn't match the class at "+(b * t.blockSize + i));
+						}
+					}
+					long rawSize = 2L * values.length;
+					rawTotal += rawSize;
+					packedTotal += t.getFileSize();
+					System.out.println(String.format("Class %d-%d: raw %d bytes, compressed %d bytes, ratio %.1f, blocks %d", m, o, rawSize, t.getFileSize(), (double) rawSize / t.getFileSize(), t.blockCnt));
+				} finally {
+					t.close();
+				}
+			}
+		}
+		if(packedTotal > 0)
+			System.out.println(String.format("Total: raw %d bytes, compressed %d bytes, ratio %.1f", rawTotal, packedTotal, (double) rawTotal / packedTotal));
+	}
+
+}
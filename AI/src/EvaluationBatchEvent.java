@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author sivakarthik
+ * This class is the flight recorder event for a batch of consecutive static evaluations.
+ * One event is written per batch rather than per evaluation, which keeps the recording cost off the leaf path.
+ */
+@Name("ai.EvaluationBatch")
+@Label("Evaluation Batch")
+@Category({"AI", "Search"})
+@Description("A batch of consecutive static evaluations of a search")
+public class EvaluationBatchEvent extends jdk.jfr.Event {
+
+	@Label("Engine")
+	String engine;
+
+	@Label("Board")
+	String board;
+
+	@Label("Depth")
+	int depth;
+
+	@Label("Nodes")
+	long nodes;
+
+	@Label("Evaluations")
+	int evaluations;
+
+}
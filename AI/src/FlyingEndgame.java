@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author sivakarthik
+ * This class contains logic to solve the flying endgame exactly, every position of the moving phase where a side is down to three pieces, and to probe the solution.
+ * A side with three pieces can jump to any empty position, so these positions have the most moves, and the engines get the least depth out of searching them.
+ * The positions make up the classes 3-N and N-3 of the Tablebase, for N from three to nine, and they only lead to each other:
+ * a move without a capture goes from 3-N to N-3 and back, a capture from 3-N leads to N-1 - 3, and a capture from N-3 ends the game.
+ * So the classes are built by the RetrogradeBuilder in order of N, each one written to its block-compressed file as it is finished,
+ * and probed from there by the classes built after it, so none of them is held whole in memory.
+ * The engines probe it instead of searching such a position.
+ */
+public class FlyingEndgame {
+
+	public static final int winScore = 10000;
+	static final Map<String, FlyingEndgame> opened = new HashMap<String, FlyingEndgame>();
+
+	Tablebase tb;
+	int maxCnt;
+
+	FlyingEndgame(Tablebase tb) {
+		this.tb = tb;
+		for(int n = Tablebase.minPieces; n <= Tablebase.maxPieces && tb.hasClass(3, n) && tb.hasClass(n, 3); n++) {
+			this.maxCnt = n;
+		}
+	}
+
+	/**
+	 * This method returns the solution in the given directory, opening it the first time it is asked for. All the engines share one instance, and its cache, per directory.
+	 * @param dir
+	 * @return
+	 * @throws IOException
+	 */
+	public static FlyingEndgame open(File dir) throws IOException {
+		String key = dir.getCanonicalPath();
+		synchronized(opened) {
+			FlyingEndgame fe = opened.get(key);
+			if(fe == null) {
+				Tablebase tb = new Tablebase();
+				tb.load(dir);
+				fe = new FlyingEndgame(tb);
+				opened.put(key, fe);
+			}
+			return fe;
+		}
+	}
+
+	/**
+	 * This method returns the most pieces of the other side up to which the classes are solved, or 0 when none are.
+	 * @return
+	 */
+	public int getMaxCnt() {
+		return this.maxCnt;
+	}
+
+	/**
+	 * This method checks whether the given board, in the moving phase, is one of the solved positions: one side has three pieces, and the other three up to the solved count.
+	 * @param packed
+	 * @return
+	 */
+	public boolean covers(long packed) {
+		int wCnt = PackedBoard.getWhiteCnt(packed);
+		int bCnt = PackedBoard.getBlackCnt(packed);
+		if(wCnt < 3 || bCnt < 3 || (wCnt != 3 && bCnt != 3))
+			return false;
+		return Math.max(wCnt, bCnt) <= this.maxCnt;
+	}
+
+	/**
+	 * This method returns the tablebase value of the given board with the given side to move, or Tablebase.unknown when the board is not covered.
+	 * @param packed
+	 * @param type
+	 * @return
+	 */
+	public int probe(long packed, char type) {
+		if(!covers(packed))
+			return Tablebase.unknown;
+		return this.tb.probe(packed, type);
+	}
+
+	/**
+	 * This method turns a tablebase value, for the given side to move, into an estimate for white on the scale of the engines.
+	 * A win is worth the game over estimate less its distance, so shorter wins and longer losses are preferred, and a draw is worth 0.
+	 * The distance is to the next capture, so it only orders the wins of one position, it is not the length of the game.
+	 * @param value
+	 * @param type
+	 * @return
+	 */
+	public static int getScore(int value, char type) {
+		int score;
+		if(value > 0)
+			score = winScore - value;
+		else if(value < 0)
+			score = -(winScore + value + 1);
+		else
+			score = 0;
+		return (type == 'w') ? score : -score;
+	}
+
+	/**
+	 * This method builds the flying endgame classes up to the given pieces of the other side, that are not in the given directory yet, and saves them compressed.
+	 * The classes already in the directory are opened from their files, for the captures of the classes built after them.
+	 * @param dir
+	 * @param maxCnt
+	 * @param threadCnt
+	 * @param workDir
+	 * @throws Exception
+	 */
+	public static void build(File dir, int maxCnt, int threadCnt, File workDir) throws Exception {
+		Tablebase tb = new Tablebase();
+		RetrogradeBuilder b = new RetrogradeBuilder(tb, threadCnt, workDir, dir);
+		try {
+			for(int n = Tablebase.minPieces; n <= maxCnt; n++) {
+				if(Tablebase.getCompressedFile(dir, 3, n).isFile() && Tablebase.getCompressedFile(dir, n, 3).isFile()) {
+					tb.openCompressed(dir, 3, n);
+					tb.openCompressed(dir, n, 3);
+					continue;
+				}
+				long start = System.nanoTime();
+				int rounds = b.build(3, n);
+				long elapsed = System.nanoTime() - start;
+				for(int k = 0; k < (n == 3 ? 1 : 2); k++) {
+					int mc = (k == 0) ? 3 : n, oc = (k == 0) ? n : 3;
+					long[] cnt = b.getCounts(mc, oc);
+					System.out.println("Class "+mc+"-"+oc+": positions "+Tablebase.getClassSize(mc, oc)+", wins "+cnt[0]+", losses "+cnt[1]+", draws "+cnt[2]);
+				}
+				System.out.println(String.format("  rounds %d, time (ms) %d, threads %d", rounds, elapsed / 1000000, threadCnt));
+			}
+		} finally {
+			tb.close();
+		}
+	}
+
+	/**
+	 * This is the main method. It takes the directory to keep the solution in, and optionally the most pieces of the other side, the thread count,
+	 * and a working directory for the states of the classes being built.
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String args[]) throws Exception {
+		if(args.length < 1) {
+			System.out.println("Invalid Number of Arguments. Need directory, and optionally most pieces of the other side, threads and working directory");
+			System.exit(1);
+		}
+		File dir = new File(args[0]);
+		int maxCnt = (args.length > 1 ? Integer.parseInt(args[1]) : Tablebase.maxPieces);
+		int threadCnt = (args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors());
+		File workDir = (args.length > 3 ? new File(args[3]) : null);
+		if(maxCnt < Tablebase.minPieces || maxCnt > Tablebase.maxPieces || threadCnt < 1) {
+			System.out.println("Pieces have to be between "+Tablebase.minPieces+" and "+Tablebase.maxPieces+", threads have to be positive.");
+			System.exit(1);
+		}
+		if(!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create "+dir);
+		}
+		if(workDir != null && !workDir.isDirectory() && !workDir.mkdirs()) {
+			throw new IOException("Can't create "+workDir);
+		}
+		build(dir, maxCnt, threadCnt, workDir);
+	}
+
+}
@@ -0,0 +1,260 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * @author sivakarthik
+ * This class contains logic to play a whole game as white, one move per request, with the alpha beta engines.
+ * The engines keep their trees between the moves, so the subtree under the move played and the opponent's reply is reused as the root of the next search.
+ * With pondering on, after every move of the moving phase the reply expected by the search is played in advance, and the position after it is searched in the background while the opponent thinks.
+ * If the opponent plays that reply, the background search is the answer. Otherwise it is stopped, and the next move is searched from the kept tree as usual.
+ * The game engine and the ponderer share one transposition table, so after a miss the next search still finds the positions the background search finished.
+ * It reads one board per line from the standard input, white to move, and writes the board after its move.
+ */
+public class GameSession {
+
+	public static final int posCnt = 23;
+	public static final int placements = 9;
+	ABOpening opening = new ABOpening();
+	ABGame game = new ABGame();
+	ABGame ponderer = new ABGame();
+	Thread ponderThread;
+	long predictedBoard;
+	int treeDepth;
+	int movesPlayed = 0;
+	int ponderHits = 0, ponderMisses = 0;
+	boolean logStats = false;
+	boolean ponder = false;
+	String result;
+
+	public GameSession() {
+
+	}
+
+	/**
+	 * This method contains the initialization logic. It saves the depth passed in the input arguments, and the optional stats and ponder flags.
+	 * @param args
+	 */
+	public void initialize(String[] args) {
+		if(args.length < 1) {
+			System.out.println("Invalid Number of Arguments. Need depth, and optionally stats and ponder");
+			System.exit(1);
+		}
+		this.treeDepth = Integer.parseInt(args[0]);
+		if(this.treeDepth < 1) {
+			System.out.println("Depth has to be positive.");
+			System.exit(1);
+		}
+		for(int i = 1; i < args.length; i++) {
+			if(args[i].equalsIgnoreCase("stats"))
+				this.logStats = true;
+			else if(args[i].equalsIgnoreCase("ponder"))
+				this.ponder = true;
+		}
+		this.opening.reuseTree = true;
+		this.opening.treeDepth = this.treeDepth;
+		this.game.reuseTree = true;
+		this.game.treeDepth = this.treeDepth;
+		this.ponderer.reuseTree = true;
+		this.ponderer.treeDepth = this.treeDepth;
+		this.ponderer.tt = this.game.tt;
+		// the shared table is empty now, so neither engine has to clear it on its first search
+		this.game.lastTreeDepth = this.treeDepth;
+		this.ponderer.lastTreeDepth = this.treeDepth;
+	}
+
+	private int getOccCnt(char[] board, char c) {
+		int cnt = 0;
+		for(char a: board) {
+			if(a == c)
+				cnt++;
+		}
+		return cnt;
+	}
+
+	/**
+	 * This method returns the result if the game is over on the given board with white to move, and null otherwise.
+	 * @param board
+	 * @return
+	 */
+	private String getResult(char[] board) {
+		if(getOccCnt(board, 'b') < 3) {
+			return "You Won!";
+		} else if(getOccCnt(board, 'w') < 3) {
+			return "You Lost!";
+		} else if(this.game.generatePossibleBoards(board, 'b').size() == 0) {
+			return "You Won!";
+		} else if(this.game.generatePossibleBoards(board, 'w').size() == 0) {
+			return "You Lost!";
+		}
+		return null;
+	}
+
+	/**
+	 * This method finds the reply the last search expects to the move it chose, the second move of its principal variation, and starts searching the board after that reply on a background thread.
+	 * The subtree of the reply is copied to the ponderer first, so the background search never reads the tree of the game engine, and the variation is handed over to seed its move ordering.
+	 */
+	private void startPondering() {
+		NodeArena a = this.game.arena;
+		long[] line = this.game.getPv().getBoards();
+		if(line.length < 2)
+			return;
+		int predicted = NodeArena.none;
+		for(int c = a.firstChild[this.game.root]; c != NodeArena.none && predicted == NodeArena.none; c = a.nextSibling[c]) {
+			if(a.board[c] != line[0])
+				continue;
+			for(int g = a.firstChild[c]; g != NodeArena.none; g = a.nextSibling[g]) {
+				if(a.board[g] == line[1]) {
+					predicted = g;
+					break;
+				}
+			}
+		}
+		if(predicted == NodeArena.none)
+			return;
+		char[] board = new char[posCnt];
+		PackedBoard.unpack(a.board[predicted], board);
+		if(getResult(board) != null)
+			return;
+
+		this.predictedBoard = a.board[predicted];
+		this.ponderer.inBoard = board;
+		this.ponderer.stopped = false;
+		this.ponderer.takeOver(a, predicted);
+		this.ponderer.pv.seed = this.game.pv.seed;
+		this.ponderThread = new Thread(new Runnable() {
+			public void run() {
+				ponderer.searchTree();
+			}
+		}, "ponder");
+		this.ponderThread.setDaemon(true);
+		this.ponderThread.start();
+	}
+
+	/**
+	 * This method waits for the background search to end, after asking it to stop if cancel is set.
+	 * @param cancel
+	 */
+	private void stopPondering(boolean cancel) {
+		if(cancel)
+			this.ponderer.stopped = true;
+		while(this.ponderThread.isAlive()) {
+			try {
+				this.ponderThread.join();
+			} catch(InterruptedException e) {
+				// keep waiting, the ponderer's tree must not be touched while it runs
+			}
+		}
+		this.ponderThread = null;
+	}
+
+	/**
+	 * This method plays white's move on the given board, and returns the board after it.
+	 * The first nine moves are placements by ABOpening, the rest are moves by ABGame. It returns null when the game is already over.
+	 * @param board
+	 * @return
+	 */
+	public char[] move(char[] board) {
+		char[] outBoard = new char[posCnt];
+		SearchStats stats;
+		if(this.movesPlayed < placements) {
+			this.opening.inBoard = board;
+			this.opening.run();
+			System.arraycopy(this.opening.outBoard, 0, outBoard, 0, posCnt);
+			stats = this.opening.stats;
+		} else {
+			this.result = getResult(board);
+			if(this.result != null) {
+				if(this.ponderThread != null)
+					stopPondering(true);
+				return null;
+			}
+			if(this.ponderThread != null && PackedBoard.pack(board) == this.predictedBoard) {
+				stopPondering(false);
+				ABGame g = this.game;
+				this.game = this.ponderer;
+				this.ponderer = g;
+				this.ponderHits++;
+			} else {
+				if(this.ponderThread != null) {
+					stopPondering(true);
+					this.ponderMisses++;
+				}
+				this.game.inBoard = board;
+				this.game.search();
+			}
+			System.arraycopy(this.game.outBoard, 0, outBoard, 0, posCnt);
+			stats = this.game.stats;
+		}
+		this.movesPlayed++;
+		if(this.logStats) {
+			stats.print(System.err);
+			if(this.ponder)
+				System.err.println("Ponder hits: "+this.ponderHits+", misses: "+this.ponderMisses);
+		}
+		if(this.ponder && this.movesPlayed > placements)
+			startPondering();
+		return outBoard;
+	}
+
+	private boolean isValid(String boardStr) {
+		if(boardStr.length() != posCnt)
+			return false;
+		for(int i = 0; i < posCnt; i++) {
+			char c = boardStr.charAt(i);
+			if(c != 'w' && c != 'b' && c != 'x')
+				return false;
+		}
+		return true;
+	}
+
+	private String upperWB(char[] board) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < posCnt; i++) {
+			char c = board[i];
+			if(c == 'w')
+				c = 'W';
+			else if(c == 'b')
+				c = 'B';
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * This method reads the boards from the standard input until it ends or the game is over, and answers every board with white's move.
+	 * @throws IOException
+	 */
+	public void run() throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+		while((line = br.readLine()) != null) {
+			line = line.trim().toLowerCase();
+			if(line.length() == 0)
+				continue;
+			if(!isValid(line)) {
+				System.out.println("Invalid input board. The board can contain only 23 characters belonging to set {w/W,x/X,b/B}.");
+				continue;
+			}
+			char[] outBoard = move(line.toCharArray());
+			if(outBoard == null) {
+				System.out.println(this.result);
+				break;
+			}
+			System.out.println(upperWB(outBoard));
+			System.out.flush();
+		}
+	}
+
+	/**
+	 * This is the main method. It takes the depth, and optionally stats to print the search statistics of every move to the standard error, and ponder to search on the opponent's time.
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String args[]) throws IOException {
+		GameSession s = new GameSession();
+		s.initialize(args);
+		s.run();
+	}
+
+}
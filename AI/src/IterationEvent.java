@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author sivakarthik
+ * This class is the flight recorder event for one iteration of a search, a full pass to the given depth.
+ */
+@Name("ai.Iteration")
+@Label("Search Iteration")
+@Category({"AI", "Search"})
+@Description("One iteration of a search to a fixed depth")
+public class IterationEvent extends jdk.jfr.Event {
+
+	@Label("Engine")
+	String engine;
+
+	@Label("Board")
+	String board;
+
+	@Label("Depth")
+	int depth;
+
+	@Label("Nodes")
+	long nodes;
+
+}
@@ -0,0 +1,71 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @author sivakarthik
+ * This class holds an array of ints in a memory-mapped working file instead of the heap, for the classes of the tablebase that don't fit in memory.
+ * The operating system keeps the pages that are in use in memory and writes the others back to the file, so the array can be bigger than the memory.
+ * A mapping can't be bigger than 2 GB, so the file is mapped in segments. The ints are read and changed through a VarHandle on the segments,
+ * which gives the same atomic reads, writes and compare and set as an AtomicIntegerArray.
+ */
+public class MappedStateArray {
+
+	static final int segmentBits = 26;
+	static final long segmentMask = (1L << segmentBits) - 1;
+	static final VarHandle intView = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+	File file;
+	long size;
+	MappedByteBuffer[] segments;
+
+	/**
+	 * This method creates the working file with the given number of ints, all zero, and maps it.
+	 * @param file
+	 * @param size
+	 * @throws IOException
+	 */
+	public MappedStateArray(File file, long size) throws IOException {
+		this.file = file;
+		this.size = size;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			raf.setLength(size * 4);
+			FileChannel channel = raf.getChannel();
+			this.segments = new MappedByteBuffer[(int) ((size + segmentMask) >>> segmentBits)];
+			for(int k = 0; k < this.segments.length; k++) {
+				long start = (long) k << segmentBits;
+				this.segments[k] = channel.map(FileChannel.MapMode.READ_WRITE, start * 4, Math.min(size - start, segmentMask + 1) * 4);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	public int get(long i) {
+		return (int) intView.getVolatile(this.segments[(int) (i >>> segmentBits)], (int) (i & segmentMask) << 2);
+	}
+
+	public void set(long i, int value) {
+		intView.setVolatile(this.segments[(int) (i >>> segmentBits)], (int) (i & segmentMask) << 2, value);
+	}
+
+	public boolean compareAndSet(long i, int expect, int update) {
+		return intView.compareAndSet(this.segments[(int) (i >>> segmentBits)], (int) (i & segmentMask) << 2, expect, update);
+	}
+
+	/**
+	 * This method drops the mapping and deletes the working file. The space is given back once the mapping is collected.
+	 */
+	public void close() {
+		this.segments = null;
+		this.file.delete();
+	}
+
+}
@@ -19,6 +19,10 @@ public class MiniMaxGameBlack {
 	int outWCnt, outBCnt;
 	int treeDepth;
 	int posEvalCnt = 0;
+	SearchStats stats = new SearchStats();
+	boolean logStats = false;
+	PvTable pv = new PvTable();
+	boolean printPv = false;
 	Node root;
 	
 	public MiniMaxGameBlack() {
@@ -32,7 +36,7 @@ public class MiniMaxGameBlack {
 	 */
 	public void initialize(String[] args) throws IOException {
 		if(args.length < 3) {
-			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, depth");
+			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, depth, and optionally stats, pv");
 			System.exit(1);
 		}
 
@@ -46,6 +50,12 @@ public class MiniMaxGameBlack {
 		}
 		populateBoardFromString(this.inBoard, inBoard);
 		br.close();
+		for(int i = 3; i < args.length; i++) {
+			if(!setOption(args[i])) {
+				System.out.println("Invalid option: "+args[i]);
+				System.exit(1);
+			}
+		}
 
 		this.treeDepth = Integer.parseInt(args[2]);
 		if(this.treeDepth < 1) {
@@ -53,6 +63,23 @@ public class MiniMaxGameBlack {
 			System.exit(1);
 		}
 	}
+
+	/**
+	 * This method sets one of the optional settings: stats to print the search statistics, and pv to print the principal variation of the search with the result.
+	 * It returns false for an unknown option.
+	 * @param option
+	 * @return
+	 */
+	public boolean setOption(String option) {
+		if(option.equalsIgnoreCase("stats")) {
+			this.logStats = true;
+		} else if(option.equalsIgnoreCase("pv")) {
+			this.printPv = true;
+		} else {
+			return false;
+		}
+		return true;
+	}
 	
 	private boolean isValid(String boardStr) {
 		if(boardStr.length() != 23) {
@@ -131,7 +158,12 @@ public class MiniMaxGameBlack {
 			System.exit(0);
 		}
 
+		this.stats.start("MiniMaxGameBlack", this.inBoard);
+		this.pv.reset(this.treeDepth);
+		this.stats.beginIteration(this.treeDepth);
 		findBestOutputBoard(this.root);
+		this.stats.endIteration();
+		this.stats.finish();
 	}
 	
 	private int getOccCnt(char[] board, char c) {
@@ -146,14 +178,18 @@ public class MiniMaxGameBlack {
 	/**
 	 * This method takes a node as input, and calculates all the possible moves under it till the input tree depth.
 	 * This method is initially invoked by the root node of the tree, and it gets recursively invoked for every other node of the tree as well.
+	 * The principal variation is kept in the PvTable on the way: a child that becomes the best move of its node takes the row of the node, with its own row after it.
 	 * @param node
 	 */
 	public void findBestOutputBoard(Node node) {
+		this.stats.node(node.depth);
+		this.pv.clear(node.depth);
 		char[] selBoard = new char[23];
 		if((node.depth == this.treeDepth) || (getOccCnt(node.board, 'w') <= 2) || (getOccCnt(node.board, 'b') <= 2)) {
 			node.staticEst = getStaticEstimate(node.board);
 			copyBoard(node.board, selBoard);
 			this.posEvalCnt++;
+			this.stats.eval();
 		} else {
 			if(node.type == 'w')
 				node.staticEst = Integer.MIN_VALUE;
@@ -161,6 +197,7 @@ public class MiniMaxGameBlack {
 				node.staticEst = Integer.MAX_VALUE;
 			
 			List<char[]> L = generatePossibleBoards(node);
+			this.pv.clear(node.depth + 1);
 			for(char[] l: L) {
 				Node child = new Node();
 				child.depth = node.depth + 1;
@@ -173,11 +210,13 @@ public class MiniMaxGameBlack {
 					if(child.staticEst > node.staticEst) {
 						node.staticEst = child.staticEst;
 						selBoard = child.board;
+						this.pv.update(node.depth, PackedBoard.pack(child.board));
 					}
 				} else {
 					if(child.staticEst < node.staticEst) {
 						node.staticEst = child.staticEst;
 						selBoard = child.board;
+						this.pv.update(node.depth, PackedBoard.pack(child.board));
 					}
 				}
 			}
@@ -612,6 +651,19 @@ public class MiniMaxGameBlack {
 		}
 	}
 	
+	/**
+	 * This method returns the principal variation of the last search: the estimate of the root, and the boards of the moves expected from it down to the depth limit, as kept in the PvTable.
+	 * The search plays black as white on the flipped board, so the boards are flipped back.
+	 * @return
+	 */
+	public PvLine getPv() {
+		long[] line = this.pv.getRow(0);
+		for(int k = 0; k < line.length; k++) {
+			line[k] = PackedBoard.fromMasks(PackedBoard.getBlack(line[k]), PackedBoard.getWhite(line[k]));
+		}
+		return new PvLine(this.root.staticEst, line);
+	}
+
 	/**
 	 * This method is responsible for printing the output in desired format. It also writes the output string into the passed in output file.
 	 * @param outputFilePath
@@ -632,6 +684,12 @@ public class MiniMaxGameBlack {
 		System.out.println("Board Position: "+outBoardStr);
 		System.out.println("Positions evaluated by static estimation: "+this.posEvalCnt);
 		System.out.println("MINIMAX Estimate: "+this.root.staticEst);
+		if(this.printPv) {
+			PvLine line = getPv();
+			System.out.println("PV: estimate "+line.getEstimate()+", line "+line);
+		}
+		if(this.logStats)
+			this.stats.print(System.out);
 	}
 	
 	private String upperWB(String board) {
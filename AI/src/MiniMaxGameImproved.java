@@ -19,7 +19,17 @@ public class MiniMaxGameImproved {
 	int outWCnt, outBCnt;
 	int treeDepth;
 	int posEvalCnt = 0;
+	SearchStats stats = new SearchStats();
+	TranspositionTable tt = new TranspositionTable();
+	boolean logStats = false;
+	PvTable pv = new PvTable();
+	boolean printPv = false;
 	Node root;
+	long[] leafBoards = new long[64];
+	long[] leafKeys = new long[64];
+	int[] leafIdx = new int[64];
+	int[] leafEst = new int[64];
+	int[] batchEst = new int[64];
 	
 	public MiniMaxGameImproved() {
 		
@@ -32,7 +42,7 @@ public class MiniMaxGameImproved {
 	 */
 	public void initialize(String[] args) throws IOException {
 		if(args.length < 3) {
-			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, depth");
+			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, depth, and optionally stats, pv");
 			System.exit(1);
 		}
 
@@ -46,6 +56,12 @@ public class MiniMaxGameImproved {
 		}
 		populateBoardFromString(this.inBoard, inBoard);
 		br.close();
+		for(int i = 3; i < args.length; i++) {
+			if(!setOption(args[i])) {
+				System.out.println("Invalid option: "+args[i]);
+				System.exit(1);
+			}
+		}
 
 		this.treeDepth = Integer.parseInt(args[2]);
 		if(this.treeDepth < 1) {
@@ -53,6 +69,23 @@ public class MiniMaxGameImproved {
 			System.exit(1);
 		}
 	}
+
+	/**
+	 * This method sets one of the optional settings: stats to print the search statistics, and pv to print the principal variation of the search with the result.
+	 * It returns false for an unknown option.
+	 * @param option
+	 * @return
+	 */
+	public boolean setOption(String option) {
+		if(option.equalsIgnoreCase("stats")) {
+			this.logStats = true;
+		} else if(option.equalsIgnoreCase("pv")) {
+			this.printPv = true;
+		} else {
+			return false;
+		}
+		return true;
+	}
 	
 	private boolean isValid(String boardStr) {
 		if(boardStr.length() != 23) {
@@ -121,7 +154,26 @@ public class MiniMaxGameImproved {
 			System.exit(0);
 		}
 		
+		search();
+	}
+
+	/**
+	 * This method creates the root node from the input board and searches it till the input tree depth.
+	 * Unlike run, it doesn't check whether the game is already over, so it can be called by other classes that track the game themselves.
+	 */
+	public void search() {
+		this.root = new Node();
+		copyBoard(this.inBoard, this.root.board);
+		this.root.depth = 0;
+		this.root.type = 'w';
+		this.tt.clear();
+
+		this.stats.start("MiniMaxGameImproved", this.inBoard);
+		this.pv.reset(this.treeDepth);
+		this.stats.beginIteration(this.treeDepth);
 		findBestOutputBoard(this.root);
+		this.stats.endIteration();
+		this.stats.finish();
 	}
 	
 	private int getOccCnt(char[] board, char c) {
@@ -136,14 +188,30 @@ public class MiniMaxGameImproved {
 	/**
 	 * This method takes a node as input, and calculates all the possible moves under it till the input tree depth.
 	 * This method is initially invoked by the root node of the tree, and it gets recursively invoked for every other node of the tree as well.
+	 * The principal variation is kept in the PvTable on the way: a child that becomes the best move of its node takes the row of the node, with its own row after it.
+	 * A board already searched at the same depth through another move order takes its value from the transposition table instead of being searched again.
+	 * The children of a node one ply above the depth limit are evaluated together as a batch.
 	 * @param node
 	 */
 	public void findBestOutputBoard(Node node) {
+		this.stats.node(node.depth);
+		this.pv.clear(node.depth);
+		long key = 0;
+		if(node.depth != 0) {
+			key = TranspositionTable.getKey(PackedBoard.pack(node.board), node.depth, this.treeDepth - node.depth);
+			int slot = this.tt.find(key);
+			this.stats.ttProbe(slot != TranspositionTable.none);
+			if(slot != TranspositionTable.none) {
+				node.staticEst = this.tt.getValue(slot);
+				return;
+			}
+		}
 		char[] selBoard = new char[23];
 		if((node.depth == this.treeDepth) || (getOccCnt(node.board, 'w') <= 2) || (getOccCnt(node.board, 'b') <= 2)) {
 			node.staticEst = getStaticEstimate(node.board);
 			copyBoard(node.board, selBoard);
 			this.posEvalCnt++;
+			this.stats.eval();
 		} else {
 			if(node.type == 'w')
 				node.staticEst = Integer.MIN_VALUE;
@@ -151,23 +219,33 @@ public class MiniMaxGameImproved {
 				node.staticEst = Integer.MAX_VALUE;
 			
 			List<char[]> L = generatePossibleBoards(node);
+			boolean batched = (node.depth + 1 == this.treeDepth);
+			if(batched)
+				evaluateLeaves(node, L);
+			int i = 0;
+			this.pv.clear(node.depth + 1);
 			for(char[] l: L) {
 				Node child = new Node();
 				child.depth = node.depth + 1;
 				child.type = (node.type == 'w' ? 'b' : 'w');
 				copyBoard(l, child.board);
 				
-				findBestOutputBoard(child);
+				if(batched)
+					child.staticEst = this.leafEst[i++];
+				else
+					findBestOutputBoard(child);
 				
 				if(node.type == 'w') {
 					if(child.staticEst > node.staticEst) {
 						node.staticEst = child.staticEst;
 						selBoard = child.board;
+						this.pv.update(node.depth, PackedBoard.pack(child.board));
 					}
 				} else {
 					if(child.staticEst < node.staticEst) {
 						node.staticEst = child.staticEst;
 						selBoard = child.board;
+						this.pv.update(node.depth, PackedBoard.pack(child.board));
 					}
 				}
 			}
@@ -175,8 +253,49 @@ public class MiniMaxGameImproved {
 		
 		if(node.depth == 0)
 			copyBoard(selBoard, node.board);
+		else
+			this.tt.put(key, node.staticEst);
 	}
 	
+	/**
+	 * This method evaluates the given boards, the children of the given node at the depth limit, and saves their estimates in leafEst in the same order.
+	 * A board found in the transposition table takes its value from there. The others are queued, evaluated in one pass by BatchEvaluator, and stored in the table.
+	 * @param node
+	 * @param L
+	 */
+	private void evaluateLeaves(Node node, List<char[]> L) {
+		int n = L.size();
+		if(this.leafEst.length < n) {
+			this.leafBoards = new long[2 * n];
+			this.leafKeys = new long[2 * n];
+			this.leafIdx = new int[2 * n];
+			this.leafEst = new int[2 * n];
+			this.batchEst = new int[2 * n];
+		}
+		int q = 0;
+		for(int i = 0; i < n; i++) {
+			this.stats.node(node.depth + 1);
+			long packed = PackedBoard.pack(L.get(i));
+			long key = TranspositionTable.getKey(packed, node.depth + 1, 0);
+			int slot = this.tt.find(key);
+			this.stats.ttProbe(slot != TranspositionTable.none);
+			if(slot != TranspositionTable.none) {
+				this.leafEst[i] = this.tt.getValue(slot);
+			} else {
+				this.leafBoards[q] = packed;
+				this.leafKeys[q] = key;
+				this.leafIdx[q++] = i;
+			}
+		}
+		BatchEvaluator.evaluate(BatchEvaluator.gameImproved, this.leafBoards, q, this.batchEst);
+		for(int k = 0; k < q; k++) {
+			this.leafEst[this.leafIdx[k]] = this.batchEst[k];
+			this.tt.put(this.leafKeys[k], this.batchEst[k]);
+			this.posEvalCnt++;
+			this.stats.eval();
+		}
+	}
+
 	private List<Integer> getPosOfChar(char[] board, char c) {
 		List<Integer> posList = new ArrayList<Integer>();
 		for(int i = 0; i < posCnt; i++) {
@@ -607,6 +726,15 @@ public class MiniMaxGameImproved {
 		}
 	}
 	
+	/**
+	 * This method returns the principal variation of the last search: the estimate of the root, and the boards of the moves expected from it down to the depth limit.
+	 * The variation is the one kept in the PvTable, carried on from the transposition table where it ends at a board the search took from the table.
+	 * @return
+	 */
+	public PvLine getPv() {
+		return new PvLine(this.root.staticEst, this.pv.getLine(this.root.staticEst, this.treeDepth, this.tt, new MoveGenerator(), false));
+	}
+
 	/**
 	 * This method is responsible for printing the output in desired format. It also writes the output string into the passed in output file.
 	 * @param outputFilePath
@@ -625,6 +753,12 @@ public class MiniMaxGameImproved {
 		System.out.println("Board Position: "+outBoardStr);
 		System.out.println("Positions evaluated by static estimation: "+this.posEvalCnt);
 		System.out.println("MINIMAX Estimate: "+this.root.staticEst);
+		if(this.printPv) {
+			PvLine line = getPv();
+			System.out.println("PV: estimate "+line.getEstimate()+", line "+line);
+		}
+		if(this.logStats)
+			this.stats.print(System.out);
 	}
 	
 	private String upperWB(String board) {
@@ -19,7 +19,13 @@ public class MiniMaxOpeningImproved {
 	int outWCnt, outBCnt;
 	int treeDepth;
 	int posEvalCnt = 0;
+	SearchStats stats = new SearchStats();
+	boolean logStats = false;
+	PvTable pv = new PvTable();
+	boolean printPv = false;
 	Node root;
+	long[] leafBoards = new long[64];
+	int[] leafEst = new int[64];
 	
 	public MiniMaxOpeningImproved() {
 		
@@ -32,7 +38,7 @@ public class MiniMaxOpeningImproved {
 	 */
 	public void initialize(String[] args) throws IOException {
 		if(args.length < 3) {
-			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, depth");
+			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, depth, and optionally stats, pv");
 			System.exit(1);
 		}
 
@@ -46,6 +52,12 @@ public class MiniMaxOpeningImproved {
 		}
 		populateBoardFromString(this.inBoard, inBoard);
 		br.close();
+		for(int i = 3; i < args.length; i++) {
+			if(!setOption(args[i])) {
+				System.out.println("Invalid option: "+args[i]);
+				System.exit(1);
+			}
+		}
 
 		this.treeDepth = Integer.parseInt(args[2]);
 		if(this.treeDepth < 1) {
@@ -53,6 +65,23 @@ public class MiniMaxOpeningImproved {
 			System.exit(1);
 		}
 	}
+
+	/**
+	 * This method sets one of the optional settings: stats to print the search statistics, and pv to print the principal variation of the search with the result.
+	 * It returns false for an unknown option.
+	 * @param option
+	 * @return
+	 */
+	public boolean setOption(String option) {
+		if(option.equalsIgnoreCase("stats")) {
+			this.logStats = true;
+		} else if(option.equalsIgnoreCase("pv")) {
+			this.printPv = true;
+		} else {
+			return false;
+		}
+		return true;
+	}
 	
 	private boolean isValid(String boardStr) {
 		if(boardStr.length() != 23) {
@@ -102,7 +131,12 @@ public class MiniMaxOpeningImproved {
 		copyBoard(this.inBoard, this.root.board);
 		this.root.depth = 0;
 		this.root.type = 'w';
+		this.stats.start("MiniMaxOpeningImproved", this.inBoard);
+		this.pv.reset(this.treeDepth);
+		this.stats.beginIteration(this.treeDepth);
 		findBestOutputBoard(this.root);
+		this.stats.endIteration();
+		this.stats.finish();
 	}
 
 	private int getOccCnt(char[] board, char c) {
@@ -117,37 +151,53 @@ public class MiniMaxOpeningImproved {
 	/**
 	 * This method takes a node as input, and calculates all the possible moves under it till the input tree depth.
 	 * This method is initially invoked by the root node of the tree, and it gets recursively invoked for every other node of the tree as well.
+	 * The principal variation is kept in the PvTable on the way: a child that becomes the best move of its node takes the row of the node, with its own row after it.
+	 * The children of a node one ply above the depth limit are evaluated together as a batch.
 	 * @param node
 	 */
 	public void findBestOutputBoard(Node node) {
+		this.stats.node(node.depth);
+		this.pv.clear(node.depth);
 		char[] selBoard = new char[23];
 		if(node.depth == this.treeDepth) {
 			node.staticEst = getStaticEstimate(node.board);
 			copyBoard(node.board, selBoard);
 			this.posEvalCnt++;
+			this.stats.eval();
 		} else {
 			if(node.type == 'w')
 				node.staticEst = Integer.MIN_VALUE;
 			else if(node.type == 'b')
 				node.staticEst = Integer.MAX_VALUE;
 			
-			for(char[] l: generatePossibleBoards(node)) {
+			List<char[]> L = generatePossibleBoards(node);
+			boolean batched = (node.depth + 1 == this.treeDepth);
+			if(batched)
+				evaluateLeaves(node, L);
+			int i = 0;
+			this.pv.clear(node.depth + 1);
+			for(char[] l: L) {
 				Node child = new Node();
 				child.depth = node.depth + 1;
 				child.type = (node.type == 'w' ? 'b' : 'w');
 				copyBoard(l, child.board);
 				
-				findBestOutputBoard(child);
+				if(batched)
+					child.staticEst = this.leafEst[i++];
+				else
+					findBestOutputBoard(child);
 				
 				if(node.type == 'w') {
 					if(child.staticEst > node.staticEst) {
 						node.staticEst = child.staticEst;
 						selBoard = child.board;
+						this.pv.update(node.depth, PackedBoard.pack(child.board));
 					}
 				} else {
 					if(child.staticEst < node.staticEst) {
 						node.staticEst = child.staticEst;
 						selBoard = child.board;
+						this.pv.update(node.depth, PackedBoard.pack(child.board));
 					}
 				}
 			}
@@ -157,6 +207,28 @@ public class MiniMaxOpeningImproved {
 			copyBoard(selBoard, node.board);
 	}
 	
+	/**
+	 * This method evaluates the given boards, the children of the given node at the depth limit, in one pass by BatchEvaluator, and saves their estimates in leafEst in the same order.
+	 * @param node
+	 * @param L
+	 */
+	private void evaluateLeaves(Node node, List<char[]> L) {
+		int n = L.size();
+		if(this.leafEst.length < n) {
+			this.leafBoards = new long[2 * n];
+			this.leafEst = new int[2 * n];
+		}
+		for(int i = 0; i < n; i++) {
+			this.stats.node(node.depth + 1);
+			this.leafBoards[i] = PackedBoard.pack(L.get(i));
+		}
+		BatchEvaluator.evaluate(BatchEvaluator.openingImproved, this.leafBoards, n, this.leafEst);
+		this.posEvalCnt += n;
+		for(int i = 0; i < n; i++) {
+			this.stats.eval();
+		}
+	}
+
 	/**
 	 * This method takes a node as input and generates and returns all boards possible from the given input node's board.
 	 * @param node
@@ -389,6 +461,14 @@ public class MiniMaxOpeningImproved {
 		}
 	}
 	
+	/**
+	 * This method returns the principal variation of the last search: the estimate of the root, and the boards of the moves expected from it down to the depth limit, as kept in the PvTable.
+	 * @return
+	 */
+	public PvLine getPv() {
+		return new PvLine(this.root.staticEst, this.pv.getRow(0));
+	}
+
 	/**
 	 * This method is responsible for printing the output in desired format. It also writes the output string into the passed in output file.
 	 * @param outputFilePath
@@ -407,6 +487,12 @@ public class MiniMaxOpeningImproved {
 		System.out.println("Board Position: "+outBoardStr);
 		System.out.println("Positions evaluated by static estimation: "+this.posEvalCnt);
 		System.out.println("MINIMAX Estimate: "+this.root.staticEst);
+		if(this.printPv) {
+			PvLine line = getPv();
+			System.out.println("PV: estimate "+line.getEstimate()+", line "+line);
+		}
+		if(this.logStats)
+			this.stats.print(System.out);
 	}
 	
 	private String upperWB(String board) {
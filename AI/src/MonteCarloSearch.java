@@ -0,0 +1,405 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * @author sivakarthik
+ * This class contains logic to pick white's move by Monte Carlo tree search with the UCT selection rule, as an alternative to the fixed depth engines.
+ * Every iteration descends the tree by UCT, adds the children of the leaf it reaches, and plays a random game from one of them to the end.
+ * The result is counted in every node on the way back to the root. When the time budget is used up, the most visited move is played.
+ * The placements of the opening and the sliding and flying moves of the game are both covered, so a search can start in either phase and play through the change.
+ * The random games are played on one Position per thread, and the tree lives in a UctTree allocated once, so the search allocates nothing per move or per playout.
+ * With more than one thread, all of them search the same tree. A thread adds a virtual loss to every node on its way down and takes it back with the result,
+ * so the threads descending at the same time are steered to different lines.
+ */
+public class MonteCarloSearch {
+
+	public static final int posCnt = 23;
+	public static final int placements = 9;
+	public static final double defaultExploration = 1.4;
+	public static final int defaultVirtualLoss = 1;
+	public static final int maxPlayoutPlies = 200;
+
+	char[] inBoard = new char[23];
+	char[] outBoard = new char[23];
+	long timeLimitMillis;
+	int placementPlies = 0;
+	double exploration = defaultExploration;
+	int threadCnt = 1;
+	int virtualLoss = defaultVirtualLoss;
+	UctTree tree;
+	int treeCapacity = UctTree.defaultCapacity;
+	Worker[] workers = new Worker[0];
+	long playoutCnt;
+	int root;
+	int bestChild = UctTree.none;
+	char winner = 'x';
+	long deadline;
+	SearchStats stats = new SearchStats();
+	boolean logStats = false;
+
+	/**
+	 * This class holds what one search thread changes on its own: the position of its playouts, its random generator, and its counts.
+	 */
+	class Worker implements Runnable {
+		Position pos = new Position();
+		long seed;
+		long playoutCnt;
+		SearchStats stats;
+		int loss;
+
+		Worker(long seed) {
+			this.seed = seed;
+		}
+
+		/**
+		 * This method runs iterations until the time budget is used up.
+		 */
+		public void run() {
+			do {
+				iterate();
+			} while(System.nanoTime() < deadline);
+		}
+
+		/**
+		 * This method runs one iteration: selection down to a leaf, a random game from it, and the update of the counts on the way back.
+		 * A leaf visited before is expanded first, and the game starts from its first child instead. So a node gets children only once it has a playout of its own, which keeps the pool from filling up with nodes seen once.
+		 */
+		void iterate() {
+			UctTree t = tree;
+			int n = root;
+			addVirtualLoss(n);
+			for(int first = t.firstChild.get(n); first >= 0; first = t.firstChild.get(n)) {
+				n = select(n, first);
+				addVirtualLoss(n);
+			}
+			this.stats.node(t.depth[n]);
+			this.pos.set(t.board[n], t.getType(n), placementPlies - t.depth[n]);
+			char winner = this.pos.getWinner();
+			if(winner == 'x') {
+				if((t.visits.get(n) > this.loss || n == root) && t.expand(n, this.pos.moves, this.pos.moveCnt)) {
+					n = t.firstChild.get(n);
+					addVirtualLoss(n);
+					this.pos.play(t.board[n]);
+				}
+				winner = playout();
+			}
+			update(n, winner);
+			this.playoutCnt++;
+		}
+
+		/**
+		 * This method returns the child of the given node with the highest UCT value, the mean score plus the exploration term. A child never visited is taken first.
+		 * The counts can change under it while other threads run, which only makes the choice a little stale.
+		 * @param n
+		 * @param first
+		 * @return
+		 */
+		private int select(int n, int first) {
+			UctTree t = tree;
+			double logVisits = Math.log(t.visits.get(n));
+			int best = first;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			int end = first + t.childCnt[n];
+			for(int c = first; c < end; c++) {
+				int v = t.visits.get(c);
+				if(v == 0)
+					return c;
+				double value = t.score.get(c) / (2.0 * v) + exploration * Math.sqrt(logVisits / v);
+				if(value > bestValue) {
+					bestValue = value;
+					best = c;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * This method counts the virtual loss of this thread in the given node: visits without any score.
+		 * @param n
+		 */
+		private void addVirtualLoss(int n) {
+			if(this.loss != 0)
+				tree.visits.getAndAdd(n, this.loss);
+		}
+
+		/**
+		 * This method plays random moves from pos until the game is over, and returns the winner. A game still going after maxPlayoutPlies is a draw, and x is returned.
+		 * @return
+		 */
+		private char playout() {
+			Position p = this.pos;
+			for(int ply = 0; ply < maxPlayoutPlies; ply++) {
+				char winner = p.getWinner();
+				if(winner != 'x')
+					return winner;
+				p.play(p.moves[nextInt(p.moveCnt)]);
+			}
+			return 'x';
+		}
+
+		/**
+		 * This method counts a visit and the result of the given winner in the given node and all the nodes above it, in place of the virtual loss.
+		 * @param n
+		 * @param winner
+		 */
+		private void update(int n, char winner) {
+			UctTree t = tree;
+			for(int m = n; m != UctTree.none; m = t.parent[m]) {
+				t.visits.getAndAdd(m, 1 - this.loss);
+				char mover = (t.getType(m) == 'w') ? 'b' : 'w';
+				if(winner == mover)
+					t.score.getAndAdd(m, 2);
+				else if(winner == 'x')
+					t.score.getAndAdd(m, 1);
+			}
+		}
+
+		/**
+		 * This method returns a random number from 0 to bound - 1, from a xorshift generator.
+		 * @param bound
+		 * @return
+		 */
+		private int nextInt(int bound) {
+			long x = this.seed;
+			x ^= x << 13;
+			x ^= x >>> 7;
+			x ^= x << 17;
+			this.seed = x;
+			return (int) (((x >>> 32) * bound) >>> 32);
+		}
+	}
+
+	public MonteCarloSearch() {
+
+	}
+
+	/**
+	 * This method contains the initialization logic. It reads input board, validates and captures it. It saves the time budget passed in the input arguments,
+	 * and optionally the number of placements white has left, 0 for the moving phase, and the options.
+	 * @param args
+	 * @throws IOException
+	 */
+	public void initialize(String[] args) throws IOException {
+		if(args.length < 3) {
+			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, time in milliseconds, and optionally placements left, stats, threads=n and vloss=n");
+			System.exit(1);
+		}
+
+		BufferedReader br = new BufferedReader(new FileReader(args[0]));
+		String inBoard = br.readLine();
+		br.close();
+		inBoard = inBoard.trim().toLowerCase();
+		if(!isValid(inBoard)) {
+			System.out.println("Invalid input board. The board can contain only 23 characters belonging to set {w/W,x/X,b/B}. w/W or b/B can't occur more than 9 times each.");
+			System.exit(1);
+		}
+		for(int i = 0; i < posCnt; i++) {
+			this.inBoard[i] = inBoard.charAt(i);
+		}
+		this.timeLimitMillis = Long.parseLong(args[2]);
+		if(this.timeLimitMillis < 1) {
+			System.out.println("Time has to be positive.");
+			System.exit(1);
+		}
+		for(int i = 3; i < args.length; i++) {
+			if(args[i].equalsIgnoreCase("stats")) {
+				this.logStats = true;
+			} else if(!setOption(args[i])) {
+				int left = Integer.parseInt(args[i]);
+				if(left < 0 || left > placements) {
+					System.out.println("Placements left has to be between 0 and "+placements+".");
+					System.exit(1);
+				}
+				this.placementPlies = 2 * left;
+			}
+		}
+	}
+
+	/**
+	 * This method applies one option given as name=value: threads, the number of threads searching the tree, or vloss, the virtual loss of a thread.
+	 * It returns false when the option is not known or its value is out of range.
+	 * @param option
+	 * @return
+	 */
+	public boolean setOption(String option) {
+		int eq = option.indexOf('=');
+		if(eq < 0)
+			return false;
+		String name = option.substring(0, eq).toLowerCase();
+		int value;
+		try {
+			value = Integer.parseInt(option.substring(eq + 1));
+		} catch(NumberFormatException e) {
+			return false;
+		}
+		if(name.equals("threads") && value >= 1) {
+			this.threadCnt = value;
+		} else if(name.equals("vloss") && value >= 0) {
+			this.virtualLoss = value;
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	private boolean isValid(String boardStr) {
+		if(boardStr.length() != posCnt)
+			return false;
+		int wCnt = 0, bCnt = 0;
+		for(int i = 0; i < posCnt; i++) {
+			char c = boardStr.charAt(i);
+			if(c == 'w')
+				wCnt++;
+			else if(c == 'b')
+				bCnt++;
+			else if(c != 'x')
+				return false;
+		}
+		return wCnt <= 9 && bCnt <= 9;
+	}
+
+	/**
+	 * This method runs iterations on all the threads until the time budget is used up, and saves the most visited move of the root in outBoard.
+	 * The calling thread is one of them. A single thread adds no virtual loss, as nothing else descends the tree at the same time.
+	 * If the game is already over on the input board, outBoard is the input board, and winner is the side that won it.
+	 */
+	public void run() {
+		if(this.tree == null || this.tree.getCapacity() != this.treeCapacity)
+			this.tree = new UctTree(this.treeCapacity);
+		if(this.workers.length != this.threadCnt) {
+			this.workers = new Worker[this.threadCnt];
+			for(int i = 0; i < this.threadCnt; i++) {
+				this.workers[i] = new Worker(0x2545F4914F6CDD1DL + i * 0x9E3779B97F4A7C15L);
+			}
+		}
+		this.stats = new SearchStats();
+		this.stats.start("MonteCarloSearch", this.inBoard);
+		this.stats.beginIteration(0);
+		this.root = this.tree.reset(PackedBoard.pack(this.inBoard));
+		for(Worker w: this.workers) {
+			w.playoutCnt = 0;
+			w.stats = new SearchStats();
+			w.loss = (this.threadCnt > 1) ? this.virtualLoss : 0;
+		}
+		this.deadline = System.nanoTime() + this.timeLimitMillis * 1000000;
+		Position p = this.workers[0].pos;
+		p.set(this.tree.board[this.root], 'w', this.placementPlies);
+		this.winner = p.getWinner();
+		if(this.winner == 'x')
+			search();
+		this.playoutCnt = 0;
+		for(Worker w: this.workers) {
+			this.playoutCnt += w.playoutCnt;
+			this.stats.add(w.stats);
+		}
+		this.stats.endIteration();
+		this.stats.finish();
+
+		System.arraycopy(this.inBoard, 0, this.outBoard, 0, posCnt);
+		this.bestChild = UctTree.none;
+		UctTree t = this.tree;
+		int first = t.firstChild.get(this.root);
+		for(int c = first; first >= 0 && c < first + t.childCnt[this.root]; c++) {
+			if(this.bestChild == UctTree.none || t.visits.get(c) > t.visits.get(this.bestChild))
+				this.bestChild = c;
+		}
+		if(this.bestChild != UctTree.none)
+			PackedBoard.unpack(t.board[this.bestChild], this.outBoard);
+	}
+
+	/**
+	 * This method starts a thread for every worker but the first, runs the first on the calling thread, and waits for the others to end.
+	 */
+	private void search() {
+		Thread[] threads = new Thread[this.workers.length - 1];
+		for(int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(this.workers[i + 1], "mcts-"+(i + 1));
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		this.workers[0].run();
+		for(Thread thread: threads) {
+			while(thread.isAlive()) {
+				try {
+					thread.join();
+				} catch(InterruptedException e) {
+					// keep waiting, the counts are read once every thread is done
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method returns the result if the game was already over on the input board, and null otherwise.
+	 * On a board with fewer than 3 pieces of a side, it points out that the placements left are needed if the board is from the opening.
+	 * @return
+	 */
+	public String getResult() {
+		if(this.winner == 'x')
+			return null;
+		String result = (this.winner == 'b') ? "You Lost!" : "You Won!";
+		if(this.placementPlies == 0 && (PackedBoard.getWhiteCnt(PackedBoard.pack(this.inBoard)) < 3 || PackedBoard.getBlackCnt(PackedBoard.pack(this.inBoard)) < 3))
+			result += " (read as a moving phase board, give the placements left for an opening board)";
+		return result;
+	}
+
+	public long getPlayoutsPerSecond() {
+		long elapsed = this.stats.getElapsedNanos();
+		return elapsed == 0 ? 0 : (long) (this.playoutCnt * 1e9 / elapsed);
+	}
+
+	/**
+	 * This method writes the chosen move to the output file, and prints it with the playout count, the playout rate and the score of the move.
+	 * @param outputFilePath
+	 * @throws IOException
+	 */
+	public void printResult(String outputFilePath) throws IOException {
+		BufferedWriter bw = new BufferedWriter(new FileWriter(outputFilePath));
+		bw.write(upperWB(this.outBoard));
+		bw.flush();
+		bw.close();
+		UctTree t = this.tree;
+		System.out.println("Input Board: "+upperWB(this.inBoard));
+		System.out.println("Board Position: "+upperWB(this.outBoard));
+		System.out.println("Playouts: "+this.playoutCnt+", playouts per second: "+getPlayoutsPerSecond()+", threads: "+this.threadCnt);
+		System.out.println("Tree nodes: "+t.getSize()+" of "+t.getCapacity());
+		if(this.bestChild != UctTree.none)
+			System.out.println(String.format("Move visits: %d, score: %.3f", t.visits.get(this.bestChild), t.score.get(this.bestChild) / (2.0 * t.visits.get(this.bestChild))));
+		if(this.logStats)
+			this.stats.print(System.out);
+	}
+
+	private String upperWB(char[] board) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < posCnt; i++) {
+			char c = board[i];
+			if(c == 'w')
+				c = 'W';
+			else if(c == 'b')
+				c = 'B';
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * This is the main method. It takes inputboard path, outputboard path, time in milliseconds, and optionally the placements white has left, stats, threads=n and vloss=n.
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String args[]) throws IOException {
+		MonteCarloSearch m = new MonteCarloSearch();
+		m.initialize(args);
+		m.run();
+		String result = m.getResult();
+		if(result != null) {
+			System.out.println(result);
+			System.exit(0);
+		}
+		m.printResult(args[1]);
+	}
+
+}
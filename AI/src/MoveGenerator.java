@@ -0,0 +1,123 @@
+/**
+ * @author sivakarthik
+ * This class contains logic to generate the moves of a board one at a time, as packed boards, without allocating.
+ * In the staged order it yields the mill closing moves first, one board per capture choice, and then the other moves.
+ * The capture choices of a mill are only worked out when the search asks for the next move, so nothing is generated for the siblings a cutoff skips.
+ * In the natural order it yields the boards in the same order as generatePossibleBoards of the engines.
+ */
+public class MoveGenerator {
+
+	public static final long none = -1L;
+	static final int millStage = 0;
+	static final int quietStage = 1;
+	static final int allStage = 2;
+	static final int doneStage = 3;
+
+	boolean opening;
+	boolean white;
+	boolean flying;
+	int own, other, empty;
+	int capturable;
+	int stage;
+	int sources, from, targets;
+	int moved, captures;
+
+	public MoveGenerator() {
+
+	}
+
+	/**
+	 * This method starts the generation for the given board and side to move.
+	 * With opening set the moves are placements, otherwise they are moves to a neighbour, or to any empty position when the side has three pieces.
+	 * As in the engines' generators, there are no moves in the game phase once white has less than three pieces.
+	 * @param packedBoard
+	 * @param type
+	 * @param opening
+	 * @param staged
+	 */
+	public void init(long packedBoard, char type, boolean opening, boolean staged) {
+		int w = PackedBoard.getWhite(packedBoard);
+		int b = PackedBoard.getBlack(packedBoard);
+		this.opening = opening;
+		this.white = (type == 'w');
+		this.own = this.white ? w : b;
+		this.other = this.white ? b : w;
+		this.empty = ~(w | b) & Bitboard.posMask;
+		this.flying = (Integer.bitCount(this.own) == 3);
+		this.capturable = (Integer.bitCount(this.other) == 3) ? this.other : this.other & ~Bitboard.getMillPieces(this.other);
+		this.stage = staged ? millStage : allStage;
+		this.targets = 0;
+		this.captures = 0;
+		this.sources = getSources();
+		if(!opening && Integer.bitCount(w) < 3) {
+			this.stage = doneStage;
+			this.sources = 0;
+		}
+	}
+
+	/**
+	 * This method returns the positions the pieces move from. A placement comes from outside the board, so it has a single dummy source.
+	 * @return
+	 */
+	private int getSources() {
+		return this.opening ? 1 : this.own;
+	}
+
+	/**
+	 * This method returns the next board, or none when all the moves have been generated.
+	 * @return
+	 */
+	public long next() {
+		while(true) {
+			if(this.captures != 0) {
+				int j = Integer.numberOfTrailingZeros(this.captures);
+				this.captures &= this.captures - 1;
+				return getBoard(this.moved, this.other & ~(1 << j));
+			}
+			if(this.targets != 0) {
+				int to = Integer.numberOfTrailingZeros(this.targets);
+				this.targets &= this.targets - 1;
+				int m = (this.opening ? this.own : this.own & ~(1 << this.from)) | (1 << to);
+				boolean mill = Bitboard.isInMill(m, to);
+				if(mill && this.stage != quietStage) {
+					this.moved = m;
+					this.captures = this.capturable;
+				} else if(!mill && this.stage != millStage) {
+					return getBoard(m, this.other);
+				}
+				continue;
+			}
+			if(this.sources != 0) {
+				this.from = Integer.numberOfTrailingZeros(this.sources);
+				this.sources &= this.sources - 1;
+				this.targets = (this.opening || this.flying) ? this.empty : Bitboard.neighbours[this.from] & this.empty;
+				continue;
+			}
+			if(this.stage == millStage) {
+				this.stage = quietStage;
+				this.sources = getSources();
+				continue;
+			}
+			this.stage = doneStage;
+			return none;
+		}
+	}
+
+	/**
+	 * This method skips the given number of boards. It is used to carry on the generation of a node whose first children were generated by an earlier visit.
+	 * @param cnt
+	 * @return
+	 */
+	public boolean skip(int cnt) {
+		for(int i = 0; i < cnt; i++) {
+			if(next() == none)
+				return false;
+		}
+		return true;
+	}
+
+	private long getBoard(int ownPieces, int otherPieces) {
+		return this.white ? PackedBoard.fromMasks(ownPieces, otherPieces) : PackedBoard.fromMasks(otherPieces, ownPieces);
+	}
+
+}
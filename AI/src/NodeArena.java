@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+/**
+ * @author sivakarthik
+ * This class stores a search tree as parallel primitive arrays indexed by node number, instead of one Node object per position.
+ * A node holds its packed board, static estimate, min/max bounds, flags, depth and the indices of its parent, first child and next sibling.
+ * The arrays only grow, so one arena is reused across searches and a search after the first one allocates nothing.
+ * A subtree of one arena can be copied into another as a new tree, which lets a game keep what it searched for the previous move.
+ */
+public class NodeArena {
+
+	public static final int initialCapacity = 1 << 12;
+	public static final int none = -1;
+	public static final byte evaluated = 1;
+	public static final byte expanded = 2;
+
+	long[] board = new long[initialCapacity];
+	int[] staticEst = new int[initialCapacity];
+	int[] minStaticEst = new int[initialCapacity];
+	int[] maxStaticEst = new int[initialCapacity];
+	int[] parent = new int[initialCapacity];
+	int[] firstChild = new int[initialCapacity];
+	int[] nextSibling = new int[initialCapacity];
+	byte[] depth = new byte[initialCapacity];
+	byte[] flags = new byte[initialCapacity];
+	int size = 0;
+	int[] source = new int[0];
+
+	public NodeArena() {
+
+	}
+
+	/**
+	 * This method drops all the nodes. The arrays are kept for the next search.
+	 */
+	public void reset() {
+		this.size = 0;
+	}
+
+	/**
+	 * This method adds a node without children for the given packed board, and returns its index.
+	 * @param packedBoard
+	 * @param parentNode
+	 * @param nodeDepth
+	 * @return
+	 */
+	public int newNode(long packedBoard, int parentNode, int nodeDepth) {
+		if(this.size == this.board.length)
+			grow();
+		int n = this.size++;
+		this.board[n] = packedBoard;
+		this.staticEst[n] = 0;
+		this.minStaticEst[n] = 10000000;
+		this.maxStaticEst[n] = -10000000;
+		this.parent[n] = parentNode;
+		this.firstChild[n] = none;
+		this.nextSibling[n] = none;
+		this.depth[n] = (byte) nodeDepth;
+		this.flags[n] = 0;
+		return n;
+	}
+
+	/**
+	 * This method replaces the contents of this arena with a copy of the subtree below the given node of the other arena, and returns the number of nodes copied.
+	 * The node becomes the root at depth 0, so it has to be at an even depth with white to move. Nodes are copied breadth first, which keeps the children of every node next to each other.
+	 * Only the boards, the links and the expanded flags are copied. The estimates and bounds start afresh, as they depend on the depth searched.
+	 * @param from
+	 * @param node
+	 * @return
+	 */
+	public int copySubtree(NodeArena from, int node) {
+		reset();
+		int base = from.depth[node];
+		int r = newNode(from.board[node], none, 0);
+		this.flags[r] = (byte) (from.flags[node] & expanded);
+		if(this.source.length < this.board.length)
+			this.source = new int[this.board.length];
+		this.source[r] = node;
+		for(int k = 0; k < this.size; k++) {
+			int prev = none;
+			for(int c = from.firstChild[this.source[k]]; c != none; c = from.nextSibling[c]) {
+				int n = newNode(from.board[c], k, from.depth[c] - base);
+				this.flags[n] = (byte) (from.flags[c] & expanded);
+				if(this.source.length < this.board.length)
+					this.source = Arrays.copyOf(this.source, this.board.length);
+				this.source[n] = c;
+				if(prev == none)
+					this.firstChild[k] = n;
+				else
+					this.nextSibling[prev] = n;
+				prev = n;
+			}
+		}
+		return this.size;
+	}
+
+	/**
+	 * This method returns the first node two plies below the given node that holds the given packed board, or none.
+	 * @param node
+	 * @param packedBoard
+	 * @return
+	 */
+	public int findGrandchild(int node, long packedBoard) {
+		for(int c = this.firstChild[node]; c != none; c = this.nextSibling[c]) {
+			for(int g = this.firstChild[c]; g != none; g = this.nextSibling[g]) {
+				if(this.board[g] == packedBoard)
+					return g;
+			}
+		}
+		return none;
+	}
+
+	private void grow() {
+		int capacity = this.board.length * 2;
+		this.board = Arrays.copyOf(this.board, capacity);
+		this.staticEst = Arrays.copyOf(this.staticEst, capacity);
+		this.minStaticEst = Arrays.copyOf(this.minStaticEst, capacity);
+		this.maxStaticEst = Arrays.copyOf(this.maxStaticEst, capacity);
+		this.parent = Arrays.copyOf(this.parent, capacity);
+		this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+		this.nextSibling = Arrays.copyOf(this.nextSibling, capacity);
+		this.depth = Arrays.copyOf(this.depth, capacity);
+		this.flags = Arrays.copyOf(this.flags, capacity);
+	}
+
+	/**
+	 * This method returns the side to move at the given node. The root is always white to move.
+	 * @param n
+	 * @return
+	 */
+	public char getType(int n) {
+		return (this.depth[n] % 2 == 0) ? 'w' : 'b';
+	}
+
+	public boolean isEvaluated(int n) {
+		return (this.flags[n] & evaluated) != 0;
+	}
+
+	public void setEvaluated(int n) {
+		this.flags[n] |= evaluated;
+	}
+
+	/**
+	 * This method drops the estimate, the bounds and the evaluated flag of the given node, so it can be searched again.
+	 * @param n
+	 */
+	public void clearSearch(int n) {
+		this.staticEst[n] = 0;
+		this.minStaticEst[n] = 10000000;
+		this.maxStaticEst[n] = -10000000;
+		this.flags[n] &= ~evaluated;
+	}
+
+	public boolean isExpanded(int n) {
+		return (this.flags[n] & expanded) != 0;
+	}
+
+	public void setExpanded(int n) {
+		this.flags[n] |= expanded;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public int getCapacity() {
+		return this.board.length;
+	}
+
+}
@@ -0,0 +1,179 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author sivakarthik
+ * This class holds the solved placement phase: the exact minimax value, to a fixed depth, of every position up to a fixed ply from the empty board, as built by OpeningSolver.
+ * The value is the one the opening engines get by searching the position to that depth with the material estimate, for the side to move.
+ * A position and its mirror image have the same value, so only the smaller of the two packed boards is kept.
+ * An entry is one long: the canonical packed board and the side to move in the high bits, and the value in the low 8 bits.
+ * The entries are sorted, so a probe is a binary search, and the book is written as one file per shard of the solve, which are merged on loading.
+ * Every file names its shard and the shard count of its solve, so a book is only loaded when all the shards of one solve are there.
+ */
+public class OpeningBook {
+
+	public static final int magic = 0x4f424b32;
+	public static final int unknown = Integer.MIN_VALUE;
+	static final int valueBits = 8;
+	static final int valueBias = 128;
+
+	int plies, depth;
+	int shard, shardCnt = 1;
+	long[] entries = new long[0];
+
+	public OpeningBook() {
+
+	}
+
+	public OpeningBook(int plies, int depth, int shard, int shardCnt) {
+		this.plies = plies;
+		this.depth = depth;
+		this.shard = shard;
+		this.shardCnt = shardCnt;
+	}
+
+	/**
+	 * This method returns the smaller of the given packed board and its mirror image.
+	 * @param packed
+	 * @return
+	 */
+	public static long getCanonical(long packed) {
+		long mirrored = PackedBoard.fromMasks(Bitboard.mirror(PackedBoard.getWhite(packed)), Bitboard.mirror(PackedBoard.getBlack(packed)));
+		return Math.min(packed, mirrored);
+	}
+
+	/**
+	 * This method returns the key of the given board with the given side to move: its canonical packed board, with the side to move above it.
+	 * @param packed
+	 * @param type
+	 * @return
+	 */
+	public static long getKey(long packed, char type) {
+		return getCanonical(packed) | ((type == 'w') ? 0 : 1L << (2 * PackedBoard.posCnt));
+	}
+
+	static long getEntry(long key, int value) {
+		return (key << valueBits) | (value + valueBias);
+	}
+
+	/**
+	 * This method returns the value of the given board with the given side to move, as an estimate for white, or unknown when it is not in the book.
+	 * @param packed
+	 * @param type
+	 * @return
+	 */
+	public int probe(long packed, char type) {
+		long key = getKey(packed, type);
+		int i = Arrays.binarySearch(this.entries, key << valueBits);
+		if(i < 0)
+			i = -i - 1;
+		if(i == this.entries.length || (this.entries[i] >>> valueBits) != key)
+			return unknown;
+		return (int) (this.entries[i] & ((1 << valueBits) - 1)) - valueBias;
+	}
+
+	public int size() {
+		return this.entries.length;
+	}
+
+	/**
+	 * This method sets the entries of the book, which have to be sorted.
+	 * @param entries
+	 */
+	public void setEntries(long[] entries) {
+		this.entries = entries;
+	}
+
+	static File getFile(File dir, int shard, int shardCnt) {
+		return new File(dir, "book"+shard+"of"+shardCnt+".bin");
+	}
+
+	/**
+	 * This method writes the book to the given file.
+	 * @param f
+	 * @throws IOException
+	 */
+	public void save(File f) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+		try {
+			out.writeInt(magic);
+			out.writeInt(this.plies);
+			out.writeInt(this.depth);
+			out.writeInt(this.shard);
+			out.writeInt(this.shardCnt);
+			out.writeInt(this.entries.length);
+			for(long e: this.entries) {
+				out.writeLong(e);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * This method reads every book file of the given directory, which have to be the shards of one solve, into this book. It returns the number of files read.
+	 * Files of different solves, a shard read twice, or a shard missing are reported as an error rather than loaded as part of a book.
+	 * @param dir
+	 * @return
+	 * @throws IOException
+	 */
+	public int load(File dir) throws IOException {
+		File[] files = dir.listFiles();
+		if(files == null)
+			throw new IOException("Can't list "+dir);
+		Arrays.sort(files);
+		long[] all = new long[0];
+		boolean[] seen = null;
+		int cnt = 0;
+		for(File f: files) {
+			if(!f.getName().startsWith("book") || !f.getName().endsWith(".bin"))
+				continue;
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+			try {
+				if(in.readInt() != magic)
+					throw new IOException(f+" is not an opening book.");
+				int p = in.readInt();
+				int d = in.readInt();
+				int s = in.readInt();
+				int sc = in.readInt();
+				if(sc < 1 || s < 0 || s >= sc)
+					throw new IOException(f+" is not an opening book.");
+				if(cnt == 0) {
+					this.plies = p;
+					this.depth = d;
+					this.shardCnt = sc;
+					seen = new boolean[sc];
+				} else if(p != this.plies || d != this.depth || sc != this.shardCnt) {
+					throw new IOException(f+" is solved to another ply, depth or shard count than the other books in "+dir);
+				}
+				if(seen[s])
+					throw new IOException(f+" is a second book for shard "+s+" in "+dir);
+				seen[s] = true;
+				int n = in.readInt();
+				int from = all.length;
+				all = Arrays.copyOf(all, from + n);
+				for(int i = 0; i < n; i++) {
+					all[from + i] = in.readLong();
+				}
+			} finally {
+				in.close();
+			}
+			cnt++;
+		}
+		for(int s = 0; cnt > 0 && s < this.shardCnt; s++) {
+			if(!seen[s])
+				throw new IOException("Shard "+s+" of "+this.shardCnt+" is missing from "+dir);
+		}
+		Arrays.sort(all);
+		this.entries = all;
+		return cnt;
+	}
+
+}
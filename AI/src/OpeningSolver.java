@@ -0,0 +1,273 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author sivakarthik
+ * This class contains logic to solve the placement phase offline: every position up to a fixed ply from the empty board is searched to a fixed depth,
+ * the same way the opening engines search it, and the exact values go to an OpeningBook.
+ * The positions are found ply by ply from the empty board, with white to move first, and a position and its mirror image count once.
+ * They are searched by a pool of threads, which share one transposition table, so a subtree reached from several positions is searched once.
+ * The table is an array of longs, each holding a whole entry, so the threads read and write it without locks.
+ * The work can be split over several machines: every shard finds all the positions, but only searches the ones that hash to it, and writes its own book file.
+ */
+public class OpeningSolver {
+
+	public static final int defaultTableBits = 22;
+	static final int chunksPerThread = 8;
+	static final int exact = 0;
+	static final int lower = 1;
+	static final int upper = 2;
+	static final int infinity = 1000;
+
+	int plies, depth;
+	int threadCnt;
+	int shard, shardCnt;
+	AtomicLongArray table;
+	int tableMask;
+	long nodeCnt, tableHits;
+
+	public OpeningSolver(int plies, int depth, int threadCnt, int shard, int shardCnt) {
+		this.plies = plies;
+		this.depth = depth;
+		this.threadCnt = threadCnt;
+		this.shard = shard;
+		this.shardCnt = shardCnt;
+		this.table = new AtomicLongArray(1 << defaultTableBits);
+		this.tableMask = (1 << defaultTableBits) - 1;
+	}
+
+	static long getBoard(long key) {
+		return key & ((1L << (2 * PackedBoard.posCnt)) - 1);
+	}
+
+	static char getType(long key) {
+		return ((key >>> (2 * PackedBoard.posCnt)) & 1) == 0 ? 'w' : 'b';
+	}
+
+	/**
+	 * This method returns the sorted keys, as made by OpeningBook.getKey, of all the positions up to the ply of the solve.
+	 * Every ply is found from the one before, and sorted to drop the positions reached more than once.
+	 * @return
+	 */
+	long[] getPositions() {
+		long[] level = {OpeningBook.getKey(0L, 'w')};
+		long[] all = level;
+		MoveGenerator gen = new MoveGenerator();
+		for(int p = 1; p <= this.plies; p++) {
+			long[] next = new long[1024];
+			int cnt = 0;
+			for(long key: level) {
+				char type = getType(key);
+				gen.init(getBoard(key), type, true, false);
+				for(long child = gen.next(); child != MoveGenerator.none; child = gen.next()) {
+					if(cnt == next.length)
+						next = Arrays.copyOf(next, 2 * cnt);
+					next[cnt++] = OpeningBook.getKey(child, (type == 'w') ? 'b' : 'w');
+				}
+			}
+			level = getUnique(next, cnt);
+			long[] merged = Arrays.copyOf(all, all.length + level.length);
+			System.arraycopy(level, 0, merged, all.length, level.length);
+			all = getUnique(merged, merged.length);
+			System.out.println("Ply "+p+": positions "+level.length);
+		}
+		return all;
+	}
+
+	private static long[] getUnique(long[] keys, int cnt) {
+		Arrays.sort(keys, 0, cnt);
+		int n = 0;
+		for(int i = 0; i < cnt; i++) {
+			if(n == 0 || keys[i] != keys[n - 1])
+				keys[n++] = keys[i];
+		}
+		return Arrays.copyOf(keys, n);
+	}
+
+	/**
+	 * This method checks whether the position with the given key is searched by this shard.
+	 * @param key
+	 * @return
+	 */
+	boolean isInShard(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (h >>> 33) % this.shardCnt == this.shard;
+	}
+
+	/**
+	 * This method finds the positions, searches the ones of this shard on the thread pool, and returns them as a book.
+	 * @return
+	 * @throws Exception
+	 */
+	public OpeningBook solve() throws Exception {
+		long[] all = getPositions();
+		int cnt = 0;
+		for(long key: all) {
+			if(isInShard(key))
+				all[cnt++] = key;
+		}
+		final long[] keys = Arrays.copyOf(all, cnt);
+		final long[] entries = new long[cnt];
+		List<Callable<long[]>> work = new ArrayList<Callable<long[]>>();
+		int chunks = this.threadCnt * chunksPerThread;
+		int step = Math.max(1, (cnt + chunks - 1) / chunks);
+		for(int from = 0; from < cnt; from += step) {
+			final int f = from;
+			final int t = Math.min(from + step, cnt);
+			work.add(new Callable<long[]>() {
+				public long[] call() {
+					Worker w = new Worker();
+					for(int i = f; i < t; i++) {
+						int value = w.search(getBoard(keys[i]), getType(keys[i]), OpeningSolver.this.depth, -infinity, infinity);
+						entries[i] = OpeningBook.getEntry(keys[i], value);
+					}
+					return new long[] {w.nodeCnt, w.tableHits};
+				}
+			});
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(this.threadCnt);
+		try {
+			for(Future<long[]> f: pool.invokeAll(work)) {
+				long[] counts = f.get();
+				this.nodeCnt += counts[0];
+				this.tableHits += counts[1];
+			}
+		} finally {
+			pool.shutdown();
+		}
+		OpeningBook book = new OpeningBook(this.plies, this.depth, this.shard, this.shardCnt);
+		book.setEntries(entries);
+		return book;
+	}
+
+	/**
+	 * This class is the search of one thread. It keeps its own move generators, one per ply, and counts its nodes.
+	 */
+	class Worker {
+		MoveGenerator[] gens = new MoveGenerator[OpeningSolver.this.depth + 1];
+		long nodeCnt, tableHits;
+
+		Worker() {
+			for(int i = 0; i < this.gens.length; i++) {
+				this.gens[i] = new MoveGenerator();
+			}
+		}
+
+		/**
+		 * This method returns the minimax value of the given board with the given side to move, searched to the given depth with the material estimate, as an estimate for white.
+		 * It is an alpha beta search in the given window, which returns the exact value when it falls inside the window, and a bound of it otherwise.
+		 * Boards at the depth limit, and boards without an empty position, take the static estimate, as in the opening engines.
+		 * @param board
+		 * @param type
+		 * @param draft
+		 * @param alpha
+		 * @param beta
+		 * @return
+		 */
+		int search(long board, char type, int draft, int alpha, int beta) {
+			this.nodeCnt++;
+			if(draft == 0)
+				return BatchEvaluator.getOpeningEstimate(board);
+			long key = (OpeningBook.getKey(board, type) << 6) | draft;
+			long entry = probe(key);
+			if(entry != 0) {
+				int value = getValue(entry);
+				int bound = getBound(entry);
+				if(bound == exact || (bound == lower && value >= beta) || (bound == upper && value <= alpha)) {
+					this.tableHits++;
+					return value;
+				}
+			}
+			MoveGenerator gen = this.gens[draft];
+			gen.init(board, type, true, true);
+			long child = gen.next();
+			if(child == MoveGenerator.none)
+				return BatchEvaluator.getOpeningEstimate(board);
+			int a = alpha, b = beta;
+			int best = (type == 'w') ? -infinity : infinity;
+			for(; child != MoveGenerator.none; child = gen.next()) {
+				int v = search(child, (type == 'w') ? 'b' : 'w', draft - 1, a, b);
+				if(type == 'w') {
+					best = Math.max(best, v);
+					a = Math.max(a, v);
+				} else {
+					best = Math.min(best, v);
+					b = Math.min(b, v);
+				}
+				if(a >= b)
+					break;
+			}
+			store(key, best, (best <= alpha) ? upper : ((best >= beta) ? lower : exact));
+			return best;
+		}
+	}
+
+	private long probe(long key) {
+		long entry = this.table.get(getSlot(key));
+		return (entry >>> 10) == key ? entry : 0;
+	}
+
+	private void store(long key, int value, int bound) {
+		this.table.set(getSlot(key), (key << 10) | (bound << 8) | (value + OpeningBook.valueBias));
+	}
+
+	private int getSlot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 40) & this.tableMask;
+	}
+
+	static int getValue(long entry) {
+		return (int) (entry & 0xff) - OpeningBook.valueBias;
+	}
+
+	static int getBound(long entry) {
+		return (int) (entry >>> 8) & 3;
+	}
+
+	/**
+	 * This is the main method. It takes the directory to write the book to, the ply up to which positions are solved, and the depth they are searched to,
+	 * and optionally the thread count and the shard to solve, as index/count, like 0/4 for the first of four. It writes the book file of the shard.
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String args[]) throws Exception {
+		if(args.length < 3) {
+			System.out.println("Invalid Number of Arguments. Need book directory, plies, depth, and optionally threads and shard/shards");
+			System.exit(1);
+		}
+		File dir = new File(args[0]);
+		int plies = Integer.parseInt(args[1]);
+		int depth = Integer.parseInt(args[2]);
+		int threadCnt = (args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors());
+		int shard = 0, shardCnt = 1;
+		if(args.length > 4) {
+			String[] parts = args[4].split("/");
+			shard = Integer.parseInt(parts[0]);
+			shardCnt = Integer.parseInt(parts[1]);
+		}
+		if(plies < 0 || depth < 1 || depth > 63 || threadCnt < 1 || shardCnt < 1 || shard < 0 || shard >= shardCnt) {
+			System.out.println("Plies can't be negative, depth has to be between 1 and 63, threads positive, and the shard below the shard count.");
+			System.exit(1);
+		}
+		if(!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create "+dir);
+		}
+
+		OpeningSolver s = new OpeningSolver(plies, depth, threadCnt, shard, shardCnt);
+		long start = System.nanoTime();
+		OpeningBook book = s.solve();
+		long elapsed = System.nanoTime() - start;
+		book.save(OpeningBook.getFile(dir, shard, shardCnt));
+		System.out.println("Shard "+shard+"/"+shardCnt+": positions "+book.size()+", nodes "+s.nodeCnt+", table hits "+s.tableHits);
+		System.out.println(String.format("  time (ms) %d, nodes per second %d, threads %d", elapsed / 1000000, (long) (s.nodeCnt * 1e9 / elapsed), threadCnt));
+	}
+
+}
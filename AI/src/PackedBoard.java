@@ -0,0 +1,67 @@
+/**
+ * @author sivakarthik
+ * This class contains the helpers to pack a board into a single long and back.
+ * Bits 0-22 hold the positions of the white pieces and bits 23-45 the positions of the black pieces, so a packed board is also an exact hash key of the board.
+ */
+public class PackedBoard {
+
+	public static final int posCnt = 23;
+	public static final long posMask = (1L << posCnt) - 1;
+
+	private PackedBoard() {
+
+	}
+
+	/**
+	 * This method packs the given board into a long.
+	 * @param board
+	 * @return
+	 */
+	public static long pack(char[] board) {
+		long packed = 0;
+		for(int i = 0; i < posCnt; i++) {
+			if(board[i] == 'w')
+				packed |= 1L << i;
+			else if(board[i] == 'b')
+				packed |= 1L << (i + posCnt);
+		}
+		return packed;
+	}
+
+	/**
+	 * This method unpacks the given long into the given board.
+	 * @param packed
+	 * @param board
+	 */
+	public static void unpack(long packed, char[] board) {
+		for(int i = 0; i < posCnt; i++) {
+			if((packed & (1L << i)) != 0)
+				board[i] = 'w';
+			else if((packed & (1L << (i + posCnt))) != 0)
+				board[i] = 'b';
+			else
+				board[i] = 'x';
+		}
+	}
+
+	public static int getWhite(long packed) {
+		return (int) (packed & posMask);
+	}
+
+	public static int getBlack(long packed) {
+		return (int) ((packed >>> posCnt) & posMask);
+	}
+
+	public static int getWhiteCnt(long packed) {
+		return Integer.bitCount(getWhite(packed));
+	}
+
+	public static int getBlackCnt(long packed) {
+		return Integer.bitCount(getBlack(packed));
+	}
+
+	public static long fromMasks(int white, int black) {
+		return (white & posMask) | ((black & posMask) << posCnt);
+	}
+
+}
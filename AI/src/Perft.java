@@ -0,0 +1,161 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @author sivakarthik
+ * This class contains logic to count the positions reachable at a given depth (perft) from an input board, white to move.
+ * It uses the placement generator of MiniMaxOpening or the moving/flying generator of MiniMaxGame, so the counts can be used as a regression oracle for the move generators.
+ */
+public class Perft {
+
+	public static final int posCnt = 23;
+	char[] inBoard = new char[23];
+	int treeDepth;
+	boolean opening;
+	boolean divide;
+	long nodeCnt = 0;
+	MiniMaxOpening openingGen = new MiniMaxOpening();
+	MiniMaxGame gameGen = new MiniMaxGame();
+
+	public Perft() {
+
+	}
+
+	/**
+	 * This method contains the initialization logic. It reads the input board, the depth, the phase (opening/game) and the optional divide flag.
+	 * @param args
+	 * @throws IOException
+	 */
+	public void initialize(String[] args) throws IOException {
+		if(args.length < 3) {
+			System.out.println("Invalid Number of Arguments. Need inputboard path, depth, opening/game and optionally divide");
+			System.exit(1);
+		}
+
+		BufferedReader br = new BufferedReader(new FileReader(args[0]));
+		String inBoard = br.readLine();
+		br.close();
+		inBoard = inBoard.trim().toLowerCase();
+		if(inBoard.length() != posCnt) {
+			System.out.println("Invalid input board. The board has to contain 23 characters.");
+			System.exit(1);
+		}
+		for(int i = 0; i < posCnt; i++) {
+			this.inBoard[i] = inBoard.charAt(i);
+		}
+
+		this.treeDepth = Integer.parseInt(args[1]);
+		if(this.treeDepth < 0) {
+			System.out.println("Depth can't be negative.");
+			System.exit(1);
+		}
+		if(args[2].equalsIgnoreCase("opening")) {
+			this.opening = true;
+		} else if(args[2].equalsIgnoreCase("game")) {
+			this.opening = false;
+		} else {
+			System.out.println("Phase has to be opening or game.");
+			System.exit(1);
+		}
+		this.divide = (args.length > 3 && args[3].equalsIgnoreCase("divide"));
+	}
+
+	private int getOccCnt(char[] board, char c) {
+		int cnt = 0;
+		for(char a: board) {
+			if(a == c)
+				cnt++;
+		}
+		return cnt;
+	}
+
+	private List<char[]> generatePossibleBoards(Node node) {
+		if(this.opening)
+			return this.openingGen.generatePossibleBoards(node);
+		return this.gameGen.generatePossibleBoards(node);
+	}
+
+	/**
+	 * This method counts the leaf positions at the given depth below the input node.
+	 * In the game phase a board where either side has two or less pieces is a finished game, and it is not expanded further.
+	 * @param node
+	 * @param depth
+	 * @return
+	 */
+	public long perft(Node node, int depth) {
+		this.nodeCnt++;
+		if(depth == 0)
+			return 1;
+		if(!this.opening && (getOccCnt(node.board, 'w') <= 2 || getOccCnt(node.board, 'b') <= 2))
+			return 0;
+
+		long cnt = 0;
+		Node child = new Node();
+		child.type = (node.type == 'w' ? 'b' : 'w');
+		for(char[] l: generatePossibleBoards(node)) {
+			child.board = l;
+			cnt += perft(child, depth - 1);
+		}
+		return cnt;
+	}
+
+	/**
+	 * This method runs perft from the input board, and prints the leaf count, the generated node count and the throughput.
+	 * With divide, the leaf count under every root move is printed as well.
+	 */
+	public void run() {
+		Node root = new Node();
+		root.board = this.inBoard;
+		root.type = 'w';
+
+		long start = System.nanoTime();
+		long leafCnt = 0;
+		if(this.divide && this.treeDepth > 0) {
+			Node child = new Node();
+			child.type = 'b';
+			for(char[] l: generatePossibleBoards(root)) {
+				child.board = l;
+				long cnt = perft(child, this.treeDepth - 1);
+				System.out.println(upperWB(l)+": "+cnt);
+				leafCnt += cnt;
+			}
+		} else {
+			leafCnt = perft(root, this.treeDepth);
+		}
+		long elapsed = System.nanoTime() - start;
+
+		System.out.println("Input Board: "+upperWB(this.inBoard));
+		System.out.println("Phase: "+(this.opening ? "opening" : "game")+", Depth: "+this.treeDepth);
+		System.out.println("Leaf positions: "+leafCnt);
+		System.out.println("Generated positions: "+this.nodeCnt);
+		System.out.println("Time (ms): "+(elapsed / 1000000));
+		System.out.println("Positions per second: "+(elapsed == 0 ? 0 : (long) (this.nodeCnt * 1e9 / elapsed)));
+	}
+
+	private String upperWB(char[] board) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < posCnt; i++) {
+			char c = board[i];
+			if(c == 'w')
+				c = 'W';
+			else if(c == 'b')
+				c = 'B';
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * This is the main method. It takes inputboard path, depth, opening/game and optionally divide.
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String args[]) throws IOException {
+		Perft p = new Perft();
+		p.initialize(args);
+		p.run();
+	}
+
+}
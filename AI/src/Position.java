@@ -0,0 +1,86 @@
+/**
+ * @author sivakarthik
+ * This class holds a position that is changed in place: the packed board, the side to move, and the number of placement plies left in the game.
+ * While placement plies are left the moves are the placements of MiniMaxOpening, and after them the sliding and flying moves of MiniMaxGame.
+ * The moves are generated into an array owned by the position, so a whole game can be played on one of these without allocating.
+ */
+public class Position {
+
+	public static final int maxMoves = 1024;
+	long board;
+	char type;
+	int placementPlies;
+	long[] moves = new long[maxMoves];
+	int moveCnt;
+	MoveGenerator gen = new MoveGenerator();
+
+	public Position() {
+
+	}
+
+	/**
+	 * This method sets the position to the given board, side to move and placement plies left.
+	 * @param packedBoard
+	 * @param type
+	 * @param placementPlies
+	 */
+	public void set(long packedBoard, char type, int placementPlies) {
+		this.board = packedBoard;
+		this.type = type;
+		this.placementPlies = Math.max(placementPlies, 0);
+	}
+
+	/**
+	 * This method plays the move that leads to the given board, which has to be one of the generated moves.
+	 * @param packedBoard
+	 */
+	public void play(long packedBoard) {
+		this.board = packedBoard;
+		this.type = (this.type == 'w') ? 'b' : 'w';
+		if(this.placementPlies > 0)
+			this.placementPlies--;
+	}
+
+	public boolean isOpening() {
+		return this.placementPlies > 0;
+	}
+
+	/**
+	 * This method generates the moves of the side to move into moves, and returns their count.
+	 * @return
+	 */
+	public int generateMoves() {
+		this.gen.init(this.board, this.type, isOpening(), false);
+		int n = 0;
+		for(long child = this.gen.next(); child != MoveGenerator.none; child = this.gen.next()) {
+			this.moves[n++] = child;
+		}
+		this.moveCnt = n;
+		return n;
+	}
+
+	/**
+	 * This method returns the winner, w or b, if the game is over, and x otherwise. After the placements a side with two or less pieces has lost,
+	 * and so has the side to move when it has no move. The moves of the side to move are left in moves.
+	 * @return
+	 */
+	public char getWinner() {
+		char other = (this.type == 'w') ? 'b' : 'w';
+		if(!isOpening()) {
+			int own = (this.type == 'w') ? PackedBoard.getWhiteCnt(this.board) : PackedBoard.getBlackCnt(this.board);
+			int opp = (this.type == 'w') ? PackedBoard.getBlackCnt(this.board) : PackedBoard.getWhiteCnt(this.board);
+			if(own <= 2) {
+				this.moveCnt = 0;
+				return other;
+			}
+			if(opp <= 2) {
+				this.moveCnt = 0;
+				return this.type;
+			}
+		}
+		if(generateMoves() == 0)
+			return other;
+		return 'x';
+	}
+
+}
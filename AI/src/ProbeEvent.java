@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author sivakarthik
+ * This class is the flight recorder event for a lookup of a position in a precomputed table, such as an endgame tablebase or an opening book.
+ */
+@Name("ai.Probe")
+@Label("Table Probe")
+@Category({"AI", "Probe"})
+@Description("A lookup of a position in a tablebase or an opening book")
+public class ProbeEvent extends jdk.jfr.Event {
+
+	@Label("Table")
+	String table;
+
+	@Label("Board")
+	String board;
+
+	@Label("Depth")
+	int depth;
+
+	@Label("Nodes")
+	long nodes;
+
+	@Label("Hit")
+	boolean hit;
+
+}
@@ -0,0 +1,480 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author sivakarthik
+ * This class contains logic to solve a mid/end game position with depth-first proof-number search (df-pn), white to move.
+ * It first tries to prove that white can force a win. If that is disproved, it tries to prove that black can force a win, and if that is disproved too, the position is a draw.
+ * A side wins when the other side is down to two pieces, or has no move on its turn. The moves are the sliding and flying moves of ABGame.
+ * The proof and disproof numbers are kept in a transposition table, so a position reached by different move orders is solved once.
+ * A position repeated on the current line counts as not won for the side trying to prove the win. So a proven win or loss is always a forced one,
+ * while a draw means neither side could force a win this way.
+ * The search stops when it has visited the node budget, and the result is then unknown.
+ */
+public class ProofNumberSolver {
+
+	public static final int posCnt = 23;
+	public static final int inf = 100000000;
+	public static final int win = 1;
+	public static final int draw = 0;
+	public static final int loss = -1;
+	public static final int unknown = 2;
+	public static final int defaultTableBits = 22;
+	static final int maxPly = 2000;
+	static final int pathBits = 12;
+	static final long stackSize = 1L << 28;
+
+	char[] inBoard = new char[23];
+	char[] outBoard = new char[23];
+	long nodeBudget;
+	long nodeCnt;
+	boolean aborted;
+	int result = unknown;
+	boolean over;
+	char attacker;
+	SearchStats stats = new SearchStats();
+	boolean logStats = false;
+
+	long[] keys;
+	int[] proofNums;
+	int[] disproofNums;
+	int tableMask;
+
+	long[] path = new long[maxPly + 1];
+	int[] pathCnt = new int[1 << pathBits];
+	long[][] children = new long[maxPly + 1][];
+	MoveGenerator[] generators = new MoveGenerator[maxPly + 1];
+	MoveGenerator terminalGen = new MoveGenerator();
+	int childPn, childDn;
+	long provingChild = -1;
+
+	public ProofNumberSolver() {
+		this(defaultTableBits);
+	}
+
+	public ProofNumberSolver(int tableBits) {
+		this.keys = new long[1 << tableBits];
+		this.proofNums = new int[1 << tableBits];
+		this.disproofNums = new int[1 << tableBits];
+		this.tableMask = (1 << tableBits) - 1;
+	}
+
+	/**
+	 * This method contains the initialization logic. It reads input board, validates and captures it. It saves the node budget passed in the input arguments.
+	 * @param args
+	 * @throws IOException
+	 */
+	public void initialize(String[] args) throws IOException {
+		if(args.length < 3) {
+			System.out.println("Invalid Number of Arguments. Need inputboard path, outputboard path, node budget, and optionally stats");
+			System.exit(1);
+		}
+
+		BufferedReader br = new BufferedReader(new FileReader(args[0]));
+		String inBoard = br.readLine();
+		br.close();
+		inBoard = inBoard.trim().toLowerCase();
+		if(!isValid(inBoard)) {
+			System.out.println("Invalid input board. The board can contain only 23 characters belonging to set {w/W,x/X,b/B}. w/W or b/B can't occur more than 9 times each.");
+			System.exit(1);
+		}
+		for(int i = 0; i < posCnt; i++) {
+			this.inBoard[i] = inBoard.charAt(i);
+		}
+		this.nodeBudget = Long.parseLong(args[2]);
+		if(this.nodeBudget < 1) {
+			System.out.println("Node budget has to be positive.");
+			System.exit(1);
+		}
+		this.logStats = (args.length > 3 && args[3].equalsIgnoreCase("stats"));
+	}
+
+	private boolean isValid(String boardStr) {
+		if(boardStr.length() != posCnt)
+			return false;
+		int wCnt = 0, bCnt = 0;
+		for(int i = 0; i < posCnt; i++) {
+			char c = boardStr.charAt(i);
+			if(c == 'w')
+				wCnt++;
+			else if(c == 'b')
+				bCnt++;
+			else if(c != 'x')
+				return false;
+		}
+		return wCnt <= 9 && bCnt <= 9;
+	}
+
+	/**
+	 * This method solves the input board, and saves the result and the move to play in outBoard.
+	 * For a win the move is one that keeps the win, for a draw one that keeps black from winning, and for a loss the one that holds out the longest by the proof numbers.
+	 * If the game is already over on the input board, over is set with the result, and outBoard is the input board.
+	 */
+	public void run() {
+		this.stats = new SearchStats();
+		this.nodeCnt = 0;
+		this.aborted = false;
+		this.stats.start("ProofNumberSolver", this.inBoard);
+		this.stats.beginIteration(0);
+		long root = PackedBoard.pack(this.inBoard);
+		System.arraycopy(this.inBoard, 0, this.outBoard, 0, posCnt);
+		this.attacker = 'w';
+		this.over = getTerminal(root, 'w');
+
+		if(this.over) {
+			this.result = (this.childPn == 0) ? win : loss;
+		} else if(prove(root, 'w')) {
+			this.result = win;
+			selectMove(root, true);
+		} else if(this.aborted) {
+			this.result = unknown;
+		} else if(prove(root, 'b')) {
+			this.result = loss;
+			selectMove(root, false);
+		} else if(this.aborted) {
+			this.result = unknown;
+		} else {
+			this.result = draw;
+			selectMove(root, true);
+		}
+		this.stats.endIteration();
+		this.stats.finish();
+	}
+
+	/**
+	 * This method runs df-pn from the given board, white to move, with the given side trying to prove a win. It returns true when the win is proved.
+	 * @param root
+	 * @param side
+	 * @return
+	 */
+	private boolean prove(long root, char side) {
+		this.attacker = side;
+		this.provingChild = -1;
+		Arrays.fill(this.keys, 0);
+		Arrays.fill(this.pathCnt, 0);
+		if(getTerminal(root, 'w'))
+			return this.childPn == 0;
+		while(!this.aborted) {
+			mid(root, 'w', inf, inf, 0);
+			int slot = find(getKey(root, 'w'));
+			if(slot != -1 && (this.proofNums[slot] == 0 || this.disproofNums[slot] == 0))
+				return this.proofNums[slot] == 0;
+		}
+		return false;
+	}
+
+	/**
+	 * This method picks the move to play after the last proof.
+	 * With attacking set it is the child that decided the root, which mid keeps, as the table may have dropped its numbers since:
+	 * for a win a child proved for white, and in the draw case, where the last proof was black's, a child disproved for black.
+	 * Otherwise every move loses, and it picks the child with the highest proof number left in the table. The game isn't over on the root here, so it has a move, and outBoard always changes.
+	 * @param root
+	 * @param attacking
+	 */
+	private void selectMove(long root, boolean attacking) {
+		long best = -1;
+		if(attacking) {
+			best = this.provingChild;
+		} else {
+			MoveGenerator gen = getGenerator(0);
+			gen.init(root, 'w', false, true);
+			int bestPn = -1;
+			for(long child = gen.next(); child != MoveGenerator.none; child = gen.next()) {
+				lookup(child, 'b', 1);
+				if(this.childPn > bestPn) {
+					bestPn = this.childPn;
+					best = child;
+				}
+			}
+		}
+		if(best == -1)
+			throw new IllegalStateException("No move for a decided position that isn't over.");
+		PackedBoard.unpack(best, this.outBoard);
+	}
+
+	/**
+	 * This method is the recursive part of df-pn. It searches below the given node until its proof number reaches thpn or its disproof number reaches thdn,
+	 * and leaves the numbers of the node in the table. When it decides the root, it keeps the child with the deciding numbers in provingChild.
+	 * The node is never a finished game, and never a repetition of a position on the current line.
+	 * @param packed
+	 * @param side
+	 * @param thpn
+	 * @param thdn
+	 * @param ply
+	 */
+	private void mid(long packed, char side, int thpn, int thdn, int ply) {
+		if(++this.nodeCnt > this.nodeBudget) {
+			this.aborted = true;
+			return;
+		}
+		this.stats.node(ply);
+		long key = getKey(packed, side);
+		char childSide = (side == 'w') ? 'b' : 'w';
+		boolean or = (side == this.attacker);
+		int n = generateChildren(packed, side, ply);
+		long[] kids = this.children[ply];
+		pushPath(key, ply);
+
+		while(true) {
+			int pn, dn, best = -1, bestNum = inf + 1, secondNum = inf + 1, bestOther = 0;
+			long sum = 0;
+			for(int i = 0; i < n; i++) {
+				lookup(kids[i], childSide, ply + 1);
+				int num = or ? this.childPn : this.childDn;
+				int other = or ? this.childDn : this.childPn;
+				sum += other;
+				if(num < bestNum) {
+					secondNum = bestNum;
+					bestNum = num;
+					bestOther = other;
+					best = i;
+				} else if(num < secondNum) {
+					secondNum = num;
+				}
+			}
+			int total = (int) Math.min(sum, inf);
+			if(or) {
+				pn = Math.min(bestNum, inf);
+				dn = total;
+			} else {
+				pn = total;
+				dn = Math.min(bestNum, inf);
+			}
+			store(key, pn, dn);
+			if(ply == 0 && (pn == 0 || dn == 0))
+				this.provingChild = kids[best];
+			if(pn >= thpn || dn >= thdn || pn == 0 || dn == 0 || this.aborted)
+				break;
+
+			int childThpn, childThdn;
+			if(or) {
+				childThpn = Math.min(thpn, secondNum + 1);
+				childThdn = (int) Math.min((long) thdn - dn + bestOther, inf);
+			} else {
+				childThpn = (int) Math.min((long) thpn - pn + bestOther, inf);
+				childThdn = Math.min(thdn, secondNum + 1);
+			}
+			mid(kids[best], childSide, childThpn, childThdn, ply + 1);
+		}
+		popPath(key);
+	}
+
+	/**
+	 * This method sets childPn and childDn to the numbers of the given position: exact ones for a finished game or a repetition,
+	 * the stored ones when it is in the table, and 1 and 1 otherwise. A position past the deepest ply counts as not won for the attacker.
+	 * @param packed
+	 * @param side
+	 * @param ply
+	 */
+	private void lookup(long packed, char side, int ply) {
+		if(getTerminal(packed, side))
+			return;
+		long key = getKey(packed, side);
+		if(ply >= maxPly || isOnPath(key, ply)) {
+			this.childPn = inf;
+			this.childDn = 0;
+			return;
+		}
+		int slot = find(key);
+		this.stats.ttProbe(slot != -1);
+		if(slot != -1) {
+			this.childPn = this.proofNums[slot];
+			this.childDn = this.disproofNums[slot];
+			return;
+		}
+		this.childPn = 1;
+		this.childDn = 1;
+	}
+
+	/**
+	 * This method checks whether the game is over on the given position. If so, it sets childPn and childDn to the numbers of the finished game and returns true.
+	 * @param packed
+	 * @param side
+	 * @return
+	 */
+	private boolean getTerminal(long packed, char side) {
+		char winner;
+		if(PackedBoard.getWhiteCnt(packed) <= 2) {
+			winner = 'b';
+		} else if(PackedBoard.getBlackCnt(packed) <= 2) {
+			winner = 'w';
+		} else {
+			this.terminalGen.init(packed, side, false, false);
+			if(this.terminalGen.next() != MoveGenerator.none)
+				return false;
+			winner = (side == 'w') ? 'b' : 'w';
+		}
+		if(winner == this.attacker) {
+			this.childPn = 0;
+			this.childDn = inf;
+		} else {
+			this.childPn = inf;
+			this.childDn = 0;
+		}
+		return true;
+	}
+
+	private int generateChildren(long packed, char side, int ply) {
+		MoveGenerator gen = getGenerator(ply);
+		gen.init(packed, side, false, true);
+		long[] kids = this.children[ply];
+		if(kids == null)
+			kids = this.children[ply] = new long[64];
+		int n = 0;
+		for(long child = gen.next(); child != MoveGenerator.none; child = gen.next()) {
+			if(n == kids.length)
+				kids = this.children[ply] = Arrays.copyOf(kids, 2 * n);
+			kids[n++] = child;
+		}
+		return n;
+	}
+
+	private MoveGenerator getGenerator(int ply) {
+		if(this.generators[ply] == null)
+			this.generators[ply] = new MoveGenerator();
+		return this.generators[ply];
+	}
+
+	private static long getKey(long packed, char side) {
+		return packed | ((side == 'b') ? 1L << (2 * posCnt) : 0) | Long.MIN_VALUE;
+	}
+
+	private static int getHash(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+
+	/**
+	 * This method returns the table slot of the given key, or -1. Every key has two slots, the one its hash points at and the next one.
+	 * @param key
+	 * @return
+	 */
+	private int find(long key) {
+		int slot = getHash(key) & this.tableMask;
+		if(this.keys[slot] == key)
+			return slot;
+		slot = (slot + 1) & this.tableMask;
+		if(this.keys[slot] == key)
+			return slot;
+		return -1;
+	}
+
+	/**
+	 * This method stores the numbers of the given key. When both of its slots hold other keys, the one with the smaller numbers, the cheaper one to search again, is replaced.
+	 * @param key
+	 * @param pn
+	 * @param dn
+	 */
+	private void store(long key, int pn, int dn) {
+		int first = getHash(key) & this.tableMask;
+		int second = (first + 1) & this.tableMask;
+		int slot;
+		if(this.keys[first] == key || this.keys[first] == 0)
+			slot = first;
+		else if(this.keys[second] == key || this.keys[second] == 0)
+			slot = second;
+		else if(Math.min(this.proofNums[first], this.disproofNums[first]) <= Math.min(this.proofNums[second], this.disproofNums[second]))
+			slot = first;
+		else
+			slot = second;
+		this.keys[slot] = key;
+		this.proofNums[slot] = pn;
+		this.disproofNums[slot] = dn;
+	}
+
+	private void pushPath(long key, int ply) {
+		this.path[ply] = key;
+		this.pathCnt[getHash(key) >>> (32 - pathBits)]++;
+	}
+
+	private void popPath(long key) {
+		this.pathCnt[getHash(key) >>> (32 - pathBits)]--;
+	}
+
+	/**
+	 * This method checks whether the given key is on the current line above the given ply. A counter per hash bucket rules out most keys without a scan.
+	 * @param key
+	 * @param ply
+	 * @return
+	 */
+	private boolean isOnPath(long key, int ply) {
+		if(this.pathCnt[getHash(key) >>> (32 - pathBits)] == 0)
+			return false;
+		for(int i = ply - 1; i >= 0; i--) {
+			if(this.path[i] == key)
+				return true;
+		}
+		return false;
+	}
+
+	private String getResultString() {
+		switch(this.result) {
+			case win:
+				return "White wins";
+			case loss:
+				return "Black wins";
+			case draw:
+				return "Draw";
+			default:
+				return "Unknown, node budget used up";
+		}
+	}
+
+	/**
+	 * This method writes the move to play to the output file, and prints the result and the node count to the standard output.
+	 * @param outputFilePath
+	 * @throws IOException
+	 */
+	public void printResult(String outputFilePath) throws IOException {
+		BufferedWriter bw = new BufferedWriter(new FileWriter(outputFilePath));
+		bw.write(upperWB(this.outBoard));
+		bw.flush();
+		bw.close();
+		System.out.println("Input Board: "+upperWB(this.inBoard));
+		System.out.println("Board Position: "+upperWB(this.outBoard));
+		System.out.println("Result: "+getResultString());
+		System.out.println("Nodes searched: "+this.nodeCnt+" of "+this.nodeBudget);
+		if(this.logStats)
+			this.stats.print(System.out);
+	}
+
+	private String upperWB(char[] board) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < posCnt; i++) {
+			char c = board[i];
+			if(c == 'w')
+				c = 'W';
+			else if(c == 'b')
+				c = 'B';
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * This is the main method. It takes inputboard path, outputboard path, node budget, and optionally stats.
+	 * The solve runs on a thread with a large stack, as a line can be up to maxPly moves deep.
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String args[]) throws Exception {
+		final ProofNumberSolver s = new ProofNumberSolver();
+		s.initialize(args);
+		Thread t = new Thread(null, new Runnable() {
+			public void run() {
+				s.run();
+			}
+		}, "df-pn", stackSize);
+		t.start();
+		t.join();
+		if(s.over) {
+			System.out.println(s.result == win ? "You Won!" : "You Lost!");
+			System.exit(0);
+		}
+		s.printResult(args[1]);
+	}
+
+}
@@ -0,0 +1,41 @@
+/**
+ * @author sivakarthik
+ * This class holds one principal variation of a search: the estimate of the line, and the packed boards the expected moves lead to, starting with the move from the root.
+ */
+public class PvLine {
+
+	int estimate;
+	long[] boards;
+
+	public PvLine(int estimate, long[] boards) {
+		this.estimate = estimate;
+		this.boards = boards;
+	}
+
+	public int getEstimate() {
+		return this.estimate;
+	}
+
+	public long[] getBoards() {
+		return this.boards;
+	}
+
+	/**
+	 * This method returns the boards of the line as strings, with the pieces in upper case as in the output files, separated by spaces.
+	 * @return
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		char[] board = new char[PackedBoard.posCnt];
+		for(long b: this.boards) {
+			PackedBoard.unpack(b, board);
+			if(sb.length() > 0)
+				sb.append(' ');
+			for(char c: board) {
+				sb.append(c == 'x' ? c : Character.toUpperCase(c));
+			}
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,163 @@
+import java.util.Arrays;
+
+/**
+ * @author sivakarthik
+ * This class contains logic to keep the principal variation of an alpha beta search in a triangular table, without keeping any more of the tree.
+ * Row p holds the expected line below the node the search is at on ply p. A node clears its row when the search enters it,
+ * and when one of its children becomes its best move, the row becomes that child's board followed by the row of the child, one ply down.
+ * So when the search is over, row 0 holds the line of the root. It ends early below a board whose value came from a table instead of a search,
+ * and is carried on from the transposition table then, as long as a child with the value of the line is found there.
+ * The line of the last search is kept as the seed of the next one: when the next root is on it, every node of the next search still on the line searches the move of the line first.
+ */
+public class PvTable {
+
+	long[][] boards = new long[0][];
+	int[] length = new int[0];
+	long[] seed = new long[0];
+	long[] hint = new long[0];
+	int hintCnt = 0;
+
+	/**
+	 * This method makes room for lines of the given number of plies, and clears the table.
+	 * @param plies
+	 */
+	public void reset(int plies) {
+		if(this.boards.length < plies + 1) {
+			this.boards = new long[plies + 1][plies + 1];
+			this.length = new int[plies + 1];
+		}
+		Arrays.fill(this.length, 0);
+	}
+
+	public void clear(int ply) {
+		this.length[ply] = 0;
+	}
+
+	/**
+	 * This method makes the given board, a child of the node on the given ply, the best move of the node, with the line of the child after it.
+	 * @param ply
+	 * @param board
+	 */
+	public void update(int ply, long board) {
+		long[] row = this.boards[ply];
+		row[0] = board;
+		int cnt = this.length[ply + 1];
+		System.arraycopy(this.boards[ply + 1], 0, row, 1, cnt);
+		this.length[ply] = cnt + 1;
+	}
+
+	/**
+	 * This method returns the board of the best move of the root found by the last search, or MoveGenerator.none when there is none.
+	 * @return
+	 */
+	public long getMove() {
+		return (this.length[0] > 0) ? this.boards[0][0] : MoveGenerator.none;
+	}
+
+	/**
+	 * This method returns a copy of the given row.
+	 * @param ply
+	 * @return
+	 */
+	public long[] getRow(int ply) {
+		return Arrays.copyOf(this.boards[ply], this.length[ply]);
+	}
+
+	/**
+	 * This method returns the line of the given child of the node on the given ply, just searched: the board of the child, followed by the row of the child.
+	 * @param ply
+	 * @param board
+	 * @return
+	 */
+	public long[] getLine(int ply, long board) {
+		long[] line = new long[this.length[ply + 1] + 1];
+		line[0] = board;
+		System.arraycopy(this.boards[ply + 1], 0, line, 1, this.length[ply + 1]);
+		return line;
+	}
+
+	/**
+	 * This method returns the line of the root of the last search, carried on from the given transposition table down to the given depth, as far as it can be.
+	 * @param estimate
+	 * @param treeDepth
+	 * @param tt
+	 * @param gen
+	 * @param opening
+	 * @return
+	 */
+	public long[] getLine(int estimate, int treeDepth, TranspositionTable tt, MoveGenerator gen, boolean opening) {
+		return extend(Arrays.copyOf(this.boards[0], this.length[0]), estimate, treeDepth, tt, gen, opening);
+	}
+
+	/**
+	 * This method carries the given line, starting with a move from the root, on from the given transposition table down to the given depth, as far as it can be.
+	 * A board of the line on ply p is carried on by the first of its children found in the table at ply p + 1, searched to the depth left, with the estimate of the line.
+	 * @param pv
+	 * @param estimate
+	 * @param treeDepth
+	 * @param tt
+	 * @param gen
+	 * @param opening
+	 * @return
+	 */
+	public static long[] extend(long[] pv, int estimate, int treeDepth, TranspositionTable tt, MoveGenerator gen, boolean opening) {
+		long[] line = Arrays.copyOf(pv, Math.max(pv.length, treeDepth));
+		int cnt = pv.length;
+		while(cnt > 0 && cnt < treeDepth) {
+			long next = MoveGenerator.none;
+			gen.init(line[cnt - 1], (cnt % 2 == 0) ? 'w' : 'b', opening, false);
+			for(long board = gen.next(); board != MoveGenerator.none; board = gen.next()) {
+				int slot = tt.find(TranspositionTable.getKey(board, cnt + 1, treeDepth - cnt - 1));
+				if(slot != TranspositionTable.none && tt.getValue(slot) == estimate) {
+					next = board;
+					break;
+				}
+			}
+			if(next == MoveGenerator.none)
+				break;
+			line[cnt++] = next;
+		}
+		return Arrays.copyOf(line, cnt);
+	}
+
+	/**
+	 * This method keeps the given line, with the given root board before it, as the seed of the next search.
+	 * @param rootBoard
+	 * @param line
+	 */
+	public void setSeed(long rootBoard, long[] line) {
+		long[] s = new long[line.length + 1];
+		s[0] = rootBoard;
+		System.arraycopy(line, 0, s, 1, line.length);
+		this.seed = s;
+	}
+
+	/**
+	 * This method looks for the given root board on the seed, at a ply where white is to move, and makes the rest of the seed from there the line to search first.
+	 * When the root is not on the seed, no move is searched first.
+	 * @param rootBoard
+	 */
+	public void setHint(long rootBoard) {
+		this.hintCnt = 0;
+		for(int k = 0; k < this.seed.length; k += 2) {
+			if(this.seed[k] == rootBoard) {
+				this.hint = Arrays.copyOfRange(this.seed, k, this.seed.length);
+				this.hintCnt = this.hint.length;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * This method returns the board the move of the seed leads to from the given board on the given ply, or MoveGenerator.none when the board is not on the seed.
+	 * @param ply
+	 * @param board
+	 * @return
+	 */
+	public long getHint(int ply, long board) {
+		if(ply + 1 >= this.hintCnt || this.hint[ply] != board)
+			return MoveGenerator.none;
+		return this.hint[ply + 1];
+	}
+
+}
@@ -0,0 +1,483 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * @author sivakarthik
+ * This class contains logic to build the Tablebase by retrograde analysis, on all cores.
+ * A class is built together with the class of the same material with the other side to move, as the moves without a capture go from one to the other.
+ * A capture leads to a class with one piece less, so the classes are built in order of the total piece count, and a capture is looked up in a finished class.
+ * Every position first gets its outcome from its captures and the count of its other moves. The outcomes then spread backwards in rounds:
+ * in round r, the predecessors of every position decided in round r - 1 are won if it is lost, and lose one open move if it is won, and are lost when none is left.
+ * The positions still open when a round decides nothing are draws.
+ * Every round splits both classes into index ranges handled by a pool of threads. The state of a position is one int of an atomic array, changed only by compare and set.
+ * Given a working directory, the states are kept in memory-mapped files there instead, so a class can be bigger than the memory.
+ * The rounds then read the classes in index order, and gather the changes to the predecessors, which are all over the other class,
+ * into large batches sorted by the region of the file they fall in, so the pages of the working files are visited in order, mostly once per batch.
+ * Given a tablebase directory, a finished class is written straight from its states to its compressed file there, a block at a time,
+ * and the later classes probe it from that file, through a larger block cache than the engines use, so no class is ever held whole on the heap. Without one, the finished classes go to the tablebase in memory.
+ */
+public class RetrogradeBuilder {
+
+	static final int tagMask = 3 << 30;
+	static final int winTag = 1 << 30;
+	static final int lossTag = 2 << 30;
+	static final int chunksPerThread = 8;
+	static final int updateBatch = 1 << 20;
+	static final int regionBits = 14;
+	static final int buildCacheBlocks = 1 << 14;
+
+	Tablebase tb;
+	int threadCnt;
+	File workDir;
+	File dir;
+	long[][] counts = new long[(Tablebase.maxPieces + 1) * (Tablebase.maxPieces + 1)][];
+	ThreadLocal<UpdateBatch> updateBatches = new ThreadLocal<UpdateBatch>() {
+		protected UpdateBatch initialValue() {
+			return new UpdateBatch();
+		}
+	};
+	ExecutorService pool;
+	long decidedCnt;
+
+	public RetrogradeBuilder(Tablebase tb, int threadCnt) {
+		this.tb = tb;
+		this.threadCnt = threadCnt;
+	}
+
+	public RetrogradeBuilder(Tablebase tb, int threadCnt, File workDir) {
+		this(tb, threadCnt);
+		this.workDir = workDir;
+	}
+
+	public RetrogradeBuilder(Tablebase tb, int threadCnt, File workDir, File dir) {
+		this(tb, threadCnt, workDir);
+		this.dir = dir;
+		if(dir != null)
+			tb.setCacheBlocks(buildCacheBlocks);
+	}
+
+	/**
+	 * This class holds the piece counts and the state of the positions of one class while it is built, on the heap or in a working file of the given directory.
+	 */
+	static class ClassState {
+		int moverCnt, otherCnt;
+		long size;
+		AtomicIntegerArray state;
+		MappedStateArray mapped;
+
+		ClassState(int moverCnt, int otherCnt, File workDir) throws IOException {
+			this.moverCnt = moverCnt;
+			this.otherCnt = otherCnt;
+			this.size = Tablebase.getClassSize(moverCnt, otherCnt);
+			if(workDir == null && !Tablebase.fitsInArray(moverCnt, otherCnt))
+				throw new IllegalArgumentException("Class "+moverCnt+"-"+otherCnt+" has "+this.size+" positions, too many for the heap. It needs a working directory.");
+			if(workDir == null)
+				this.state = new AtomicIntegerArray((int) this.size);
+			else
+				this.mapped = new MappedStateArray(new File(workDir, "state"+moverCnt+otherCnt+".tmp"), this.size);
+		}
+
+		int get(long i) {
+			return (this.mapped == null) ? this.state.get((int) i) : this.mapped.get(i);
+		}
+
+		void set(long i, int s) {
+			if(this.mapped == null)
+				this.state.set((int) i, s);
+			else
+				this.mapped.set(i, s);
+		}
+
+		boolean compareAndSet(long i, int expect, int update) {
+			return (this.mapped == null) ? this.state.compareAndSet((int) i, expect, update) : this.mapped.compareAndSet(i, expect, update);
+		}
+
+		/**
+		 * This method turns the final state of the given position into its tablebase value. A position still open is a draw.
+		 * @param i
+		 * @return
+		 */
+		short getValue(long i) {
+			int s = get(i);
+			int d = s & ~tagMask;
+			if(d >= Short.MAX_VALUE)
+				throw new IllegalStateException("Distance "+d+" doesn't fit in the table.");
+			if((s & tagMask) == winTag)
+				return (short) d;
+			else if((s & tagMask) == lossTag)
+				return (short) -(d + 1);
+			return 0;
+		}
+
+		void close() {
+			this.state = null;
+			if(this.mapped != null)
+				this.mapped.close();
+		}
+	}
+
+	/**
+	 * This class holds the changes to the predecessors gathered by one thread, and the space to sort them by region.
+	 * A change is the index of a predecessor, shifted left by one, with the low bit set when the position it came from is lost.
+	 */
+	static class UpdateBatch {
+		long[] updates = new long[updateBatch];
+		long[] sorted = new long[updateBatch];
+		int[] counts = new int[0];
+		int cnt;
+	}
+
+	/**
+	 * This interface is the work done on one index range of a class. It returns the number of positions it decided.
+	 */
+	interface RangeTask {
+		long run(ClassState c, long from, long to);
+	}
+
+	/**
+	 * This method builds the class with the given piece counts, and the class with the counts swapped, and adds both to the tablebase,
+	 * as compressed files when the builder has a tablebase directory. The classes with one piece less that the captures lead to have to be in the tablebase already.
+	 * It returns the number of rounds.
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @return
+	 * @throws Exception
+	 */
+	public int build(int moverCnt, int otherCnt) throws Exception {
+		final ClassState first = new ClassState(moverCnt, otherCnt, this.workDir);
+		final ClassState second = (moverCnt == otherCnt) ? first : new ClassState(otherCnt, moverCnt, this.workDir);
+		final ClassState[] classes = (first == second) ? new ClassState[] {first} : new ClassState[] {first, second};
+		this.pool = Executors.newFixedThreadPool(this.threadCnt);
+		try {
+			runRound(classes, new RangeTask() {
+				public long run(ClassState c, long from, long to) {
+					return initRange(c, from, to);
+				}
+			});
+			int round = 1;
+			while(true) {
+				final int r = round;
+				long decided = runRound(classes, new RangeTask() {
+					public long run(ClassState c, long from, long to) {
+						return propagateRange(c, (c == first) ? second : first, from, to, r);
+					}
+				});
+				// the starting states go up to one ply, so rounds 1 and 2 always run
+				if(decided == 0 && round >= 2)
+					break;
+				round++;
+			}
+			for(ClassState c: classes) {
+				finish(c);
+			}
+			return round;
+		} finally {
+			this.pool.shutdown();
+			for(ClassState c: classes) {
+				c.close();
+			}
+		}
+	}
+
+	/**
+	 * This method runs the given task over all the positions of the given classes, split into ranges run by the thread pool, and returns the sum of their results.
+	 * @param classes
+	 * @param task
+	 * @return
+	 * @throws Exception
+	 */
+	private long runRound(ClassState[] classes, final RangeTask task) throws Exception {
+		List<Callable<Long>> work = new ArrayList<Callable<Long>>();
+		for(final ClassState c: classes) {
+			long chunks = (long) this.threadCnt * chunksPerThread;
+			long step = (c.size + chunks - 1) / chunks;
+			for(long from = 0; from < c.size; from += step) {
+				final long f = from;
+				final long t = Math.min(from + step, c.size);
+				work.add(new Callable<Long>() {
+					public Long call() {
+						return task.run(c, f, t);
+					}
+				});
+			}
+		}
+		long sum = 0;
+		for(Future<Long> f: this.pool.invokeAll(work)) {
+			sum += f.get();
+		}
+		this.decidedCnt += sum;
+		return sum;
+	}
+
+	/**
+	 * This method sets the starting state of the positions of the given range. A position with a capture to a lost position is won in one ply,
+	 * and a position without moves is lost. Any other position holds the number of its moves without a capture, and of its captures to a draw,
+	 * and is lost in one ply when there are none.
+	 * @param c
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	long initRange(ClassState c, long from, long to) {
+		MoveGenerator gen = new MoveGenerator();
+		long decided = 0;
+		for(long i = from; i < to; i++) {
+			int mover = Tablebase.getMover(c.moverCnt, c.otherCnt, i);
+			int other = Tablebase.getOther(c.moverCnt, c.otherCnt, i, mover);
+			gen.init(PackedBoard.fromMasks(mover, other), 'w', false, false);
+			int moveCnt = 0, open = 0;
+			boolean won = false;
+			for(long child = gen.next(); child != MoveGenerator.none; child = gen.next()) {
+				moveCnt++;
+				int childMover = PackedBoard.getBlack(child);
+				if(Integer.bitCount(childMover) == c.otherCnt) {
+					open++;
+					continue;
+				}
+				int v = this.tb.getValue(childMover, PackedBoard.getWhite(child));
+				if(v == Tablebase.unknown)
+					throw new IllegalStateException("The class "+(c.otherCnt - 1)+"-"+c.moverCnt+" has to be built first.");
+				if(v < 0) {
+					won = true;
+					break;
+				} else if(v == 0) {
+					open++;
+				}
+			}
+			int s;
+			if(won)
+				s = winTag | 1;
+			else if(moveCnt == 0)
+				s = lossTag;
+			else if(open == 0)
+				s = lossTag | 1;
+			else
+				s = open;
+			c.set(i, s);
+			if((s & tagMask) != 0)
+				decided++;
+		}
+		return decided;
+	}
+
+	/**
+	 * This method spreads the outcome of every position of the given range decided in the round before the given one to its predecessors in the other class.
+	 * The predecessors come from the UnmoveGenerator, without the un-captures, as a capture leads out of the class. It returns the number of predecessors it decided.
+	 * With the states in working files, the changes are gathered and applied in batches sorted by region.
+	 * @param c
+	 * @param prev
+	 * @param from
+	 * @param to
+	 * @param round
+	 * @return
+	 */
+	long propagateRange(ClassState c, ClassState prev, long from, long to, int round) {
+		UnmoveGenerator gen = new UnmoveGenerator();
+		UpdateBatch batch = (prev.mapped == null) ? null : this.updateBatches.get();
+		long decided = 0;
+		for(long i = from; i < to; i++) {
+			int s = c.get(i);
+			if((s & tagMask) == 0 || (s & ~tagMask) != round - 1)
+				continue;
+			boolean lost = ((s & tagMask) == lossTag);
+			int mover = Tablebase.getMover(c.moverCnt, c.otherCnt, i);
+			int other = Tablebase.getOther(c.moverCnt, c.otherCnt, i, mover);
+			gen.init(PackedBoard.fromMasks(mover, other), 'w', true, false);
+			for(long p = gen.next(); p != UnmoveGenerator.none; p = gen.next()) {
+				long j = Tablebase.getIndex(PackedBoard.getBlack(p), PackedBoard.getWhite(p));
+				if(batch == null) {
+					if(lost ? setWon(prev, j, round) : closeMove(prev, j, round))
+						decided++;
+					continue;
+				}
+				batch.updates[batch.cnt++] = (j << 1) | (lost ? 1 : 0);
+				if(batch.cnt == updateBatch)
+					decided += applyUpdates(prev, batch, round);
+			}
+		}
+		if(batch != null)
+			decided += applyUpdates(prev, batch, round);
+		return decided;
+	}
+
+	/**
+	 * This method sorts the given batch of changes by the region of the class they fall in, counting the changes of every region first,
+	 * applies them and empties the batch. It returns the number of predecessors it decided.
+	 * @param c
+	 * @param batch
+	 * @param round
+	 * @return
+	 */
+	private long applyUpdates(ClassState c, UpdateBatch batch, int round) {
+		int regions = (int) (c.size >>> regionBits) + 1;
+		if(batch.counts.length <= regions)
+			batch.counts = new int[regions + 1];
+		int[] counts = batch.counts;
+		Arrays.fill(counts, 0, regions + 1, 0);
+		for(int k = 0; k < batch.cnt; k++) {
+			counts[(int) (batch.updates[k] >>> (regionBits + 1)) + 1]++;
+		}
+		for(int r = 1; r <= regions; r++) {
+			counts[r] += counts[r - 1];
+		}
+		for(int k = 0; k < batch.cnt; k++) {
+			long u = batch.updates[k];
+			batch.sorted[counts[(int) (u >>> (regionBits + 1))]++] = u;
+		}
+		long decided = 0;
+		for(int k = 0; k < batch.cnt; k++) {
+			long j = batch.sorted[k] >>> 1;
+			if(((batch.sorted[k] & 1) != 0) ? setWon(c, j, round) : closeMove(c, j, round))
+				decided++;
+		}
+		batch.cnt = 0;
+		return decided;
+	}
+
+	/**
+	 * This method marks the given open position as won in the given number of plies. It returns false if the position was already decided.
+	 * @param c
+	 * @param j
+	 * @param round
+	 * @return
+	 */
+	private boolean setWon(ClassState c, long j, int round) {
+		while(true) {
+			int s = c.get(j);
+			if((s & tagMask) != 0)
+				return false;
+			if(c.compareAndSet(j, s, winTag | round))
+				return true;
+		}
+	}
+
+	/**
+	 * This method takes one open move from the given open position, and marks it as lost in the given number of plies when it was the last one.
+	 * It returns true if the position got lost.
+	 * @param c
+	 * @param j
+	 * @param round
+	 * @return
+	 */
+	private boolean closeMove(ClassState c, long j, int round) {
+		while(true) {
+			int s = c.get(j);
+			if((s & tagMask) != 0)
+				return false;
+			int next = (s == 1) ? (lossTag | round) : s - 1;
+			if(c.compareAndSet(j, s, next))
+				return (s == 1);
+		}
+	}
+
+	/**
+	 * This method turns the final states of the given class into tablebase values, and counts the wins, losses and draws on the way.
+	 * With a tablebase directory, the values are streamed from the states into the compressed file of the class, which the tablebase then probes.
+	 * Otherwise they are gathered into an array, which goes to the tablebase in memory.
+	 * @param c
+	 * @throws IOException
+	 */
+	private void finish(final ClassState c) throws IOException {
+		final long[] cnt = new long[3];
+		CompressedTable.ValueSource source = new CompressedTable.ValueSource() {
+			public short get(long index) {
+				short v = c.getValue(index);
+				cnt[v > 0 ? 0 : (v < 0 ? 1 : 2)]++;
+				return v;
+			}
+		};
+		if(this.dir == null) {
+			if(!Tablebase.fitsInArray(c.moverCnt, c.otherCnt))
+				throw new IllegalArgumentException("Class "+c.moverCnt+"-"+c.otherCnt+" has "+c.size+" positions, too many for the heap. It needs a tablebase directory.");
+			short[] v = new short[(int) c.size];
+			for(int i = 0; i < v.length; i++) {
+				v[i] = source.get(i);
+			}
+			this.tb.setClass(c.moverCnt, c.otherCnt, v);
+		} else {
+			CompressedTable.write(Tablebase.getCompressedFile(this.dir, c.moverCnt, c.otherCnt), c.moverCnt, c.otherCnt, c.size, source, CompressedTable.defaultBlockSize);
+			this.tb.openCompressed(this.dir, c.moverCnt, c.otherCnt);
+		}
+		this.counts[Tablebase.getClass(c.moverCnt, c.otherCnt)] = cnt;
+	}
+
+	/**
+	 * This method returns the wins, losses and draws of the given class, as counted when it was built.
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @return
+	 */
+	long[] getCounts(int moverCnt, int otherCnt) {
+		return this.counts[Tablebase.getClass(moverCnt, otherCnt)];
+	}
+
+	/**
+	 * This is the main method. It takes the tablebase directory, the most pieces of a side, and optionally the thread count,
+	 * and a working directory to keep the states of the classes being built in, instead of the heap.
+	 * It builds and saves every class up to the given pieces that is not in the directory yet, in order of the total piece count.
+	 * With a working directory, the classes are written as compressed files, straight from the working files, otherwise as raw files.
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String args[]) throws Exception {
+		if(args.length < 2) {
+			System.out.println("Invalid Number of Arguments. Need tablebase directory, most pieces of a side, and optionally threads and working directory");
+			System.exit(1);
+		}
+		File dir = new File(args[0]);
+		int maxCnt = Integer.parseInt(args[1]);
+		int threadCnt = (args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors());
+		if(maxCnt < Tablebase.minPieces || maxCnt > Tablebase.maxPieces || threadCnt < 1) {
+			System.out.println("Pieces have to be between "+Tablebase.minPieces+" and "+Tablebase.maxPieces+", threads have to be positive.");
+			System.exit(1);
+		}
+		if(!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create "+dir);
+		}
+		File workDir = (args.length > 3 ? new File(args[3]) : null);
+		if(workDir != null && !workDir.isDirectory() && !workDir.mkdirs()) {
+			throw new IOException("Can't create "+workDir);
+		}
+		for(int m = Tablebase.minPieces; workDir == null && m <= maxCnt; m++) {
+			for(int o = Tablebase.minPieces; o <= maxCnt; o++) {
+				if(!Tablebase.fitsInArray(m, o)) {
+					System.out.println("Class "+m+"-"+o+" has more than "+Tablebase.maxArraySize+" positions, and can only be built with a working directory.");
+					System.exit(1);
+				}
+			}
+		}
+
+		Tablebase tb = new Tablebase();
+		tb.load(dir);
+		RetrogradeBuilder b = new RetrogradeBuilder(tb, threadCnt, workDir, workDir == null ? null : dir);
+		for(int total = 2 * Tablebase.minPieces; total <= 2 * maxCnt; total++) {
+			for(int m = Tablebase.minPieces; 2 * m <= total; m++) {
+				int o = total - m;
+				if(o > maxCnt || (tb.hasClass(m, o) && tb.hasClass(o, m)))
+					continue;
+				long start = System.nanoTime();
+				b.decidedCnt = 0;
+				int rounds = b.build(m, o);
+				long elapsed = System.nanoTime() - start;
+				long size = Tablebase.getClassSize(m, o) + (m == o ? 0 : Tablebase.getClassSize(o, m));
+				for(int k = 0; k < (m == o ? 1 : 2); k++) {
+					int mc = (k == 0) ? m : o, oc = (k == 0) ? o : m;
+					if(workDir == null)
+						tb.save(dir, mc, oc);
+					long[] cnt = b.getCounts(mc, oc);
+					System.out.println("Class "+mc+"-"+oc+": positions "+Tablebase.getClassSize(mc, oc)+", wins "+cnt[0]+", losses "+cnt[1]+", draws "+cnt[2]);
+				}
+				System.out.println(String.format("  rounds %d, time (ms) %d, positions per second %d, threads %d", rounds, elapsed / 1000000, (long) (size * 1e9 / elapsed), threadCnt));
+			}
+		}
+	}
+
+}
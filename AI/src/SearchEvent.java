@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author sivakarthik
+ * This class is the flight recorder event for one whole search, from the start to the end of an engine's run.
+ */
+@Name("ai.Search")
+@Label("Search")
+@Category({"AI", "Search"})
+@Description("One search of an engine, from the input board to the chosen board")
+public class SearchEvent extends jdk.jfr.Event {
+
+	@Label("Engine")
+	String engine;
+
+	@Label("Board")
+	String board;
+
+	@Label("Depth")
+	int depth;
+
+	@Label("Nodes")
+	long nodes;
+
+	@Label("Static Evaluations")
+	long evaluations;
+
+}
@@ -0,0 +1,312 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author sivakarthik
+ * This class collects the statistics of one search: nodes and cutoffs per ply, the index of the move that caused each cutoff,
+ * transposition hit rates, and the elapsed time and node count of every iteration.
+ * Every engine fills one of these while it runs, and prints it along with the result when asked to.
+ * The search, its iterations and batches of evaluations are also written as flight recorder events, which cost next to nothing unless a recording is running.
+ */
+public class SearchStats {
+
+	public static final int maxPly = 64;
+	public static final int maxCutoffIndex = 16;
+	public static final int evalBatchSize = 1024;
+
+	long[] nodesPerPly = new long[maxPly];
+	long[] cutoffsPerPly = new long[maxPly];
+	long[] cutoffsAtIndex = new long[maxCutoffIndex];
+	long nodeCnt;
+	long evalCnt;
+	long ttProbes, ttHits;
+	long reusedNodes;
+	long reducedCnt, researchCnt;
+	long razoredCnt, razorResearchCnt;
+	long futileCnt;
+	long transpositionCutoffs;
+	long tableProbes, tableHits;
+	long startNanos, endNanos;
+	List<long[]> iterations = new ArrayList<long[]>();
+	long iterStartNanos, iterStartNodes;
+	int iterDepth;
+	String engine;
+	String board;
+	SearchEvent searchEvent;
+	IterationEvent iterationEvent;
+	EvaluationBatchEvent batchEvent = new EvaluationBatchEvent();
+	ProbeEvent probeEvent = new ProbeEvent();
+	int batchLeft;
+
+	public SearchStats() {
+
+	}
+
+	/**
+	 * This method marks the start of a search by the given engine from the given board.
+	 * @param engine
+	 * @param board
+	 */
+	public void start(String engine, char[] board) {
+		this.engine = engine;
+		this.board = new String(board);
+		this.searchEvent = new SearchEvent();
+		this.searchEvent.begin();
+		beginEvalBatch();
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * This method marks the end of a search.
+	 */
+	public void finish() {
+		this.endNanos = System.nanoTime();
+		endEvalBatch();
+		if(this.searchEvent.shouldCommit()) {
+			this.searchEvent.engine = this.engine;
+			this.searchEvent.board = this.board;
+			this.searchEvent.depth = this.iterDepth;
+			this.searchEvent.nodes = this.nodeCnt;
+			this.searchEvent.evaluations = this.evalCnt;
+			this.searchEvent.commit();
+		}
+	}
+
+	/**
+	 * This method marks the start of a search iteration to the given depth.
+	 * @param depth
+	 */
+	public void beginIteration(int depth) {
+		this.iterDepth = depth;
+		this.iterStartNanos = System.nanoTime();
+		this.iterStartNodes = this.nodeCnt;
+		this.iterationEvent = new IterationEvent();
+		this.iterationEvent.begin();
+	}
+
+	/**
+	 * This method marks the end of the current iteration, and records its depth, node count and elapsed time.
+	 */
+	public void endIteration() {
+		this.iterations.add(new long[] {this.iterDepth, this.nodeCnt - this.iterStartNodes, System.nanoTime() - this.iterStartNanos});
+		if(this.iterationEvent.shouldCommit()) {
+			this.iterationEvent.engine = this.engine;
+			this.iterationEvent.board = this.board;
+			this.iterationEvent.depth = this.iterDepth;
+			this.iterationEvent.nodes = this.nodeCnt - this.iterStartNodes;
+			this.iterationEvent.commit();
+		}
+	}
+
+	public void node(int ply) {
+		this.nodeCnt++;
+		this.nodesPerPly[Math.min(ply, maxPly - 1)]++;
+	}
+
+	public void cutoff(int ply, int moveIndex) {
+		this.cutoffsPerPly[Math.min(ply, maxPly - 1)]++;
+		this.cutoffsAtIndex[Math.min(moveIndex, maxCutoffIndex - 1)]++;
+	}
+
+	/**
+	 * This method adds the node counts of another search, run alongside this one on another thread, to the counts of this one.
+	 * @param other
+	 */
+	public void add(SearchStats other) {
+		this.nodeCnt += other.nodeCnt;
+		for(int i = 0; i < maxPly; i++) {
+			this.nodesPerPly[i] += other.nodesPerPly[i];
+		}
+	}
+
+	/**
+	 * This method records the number of nodes taken over from a previous search.
+	 * @param nodes
+	 */
+	public void reused(long nodes) {
+		this.reusedNodes += nodes;
+	}
+
+	/**
+	 * This method records a search to a reduced depth, and whether it had to be searched again to the full depth.
+	 * @param researched
+	 */
+	public void reduced(boolean researched) {
+		this.reducedCnt++;
+		if(researched)
+			this.researchCnt++;
+	}
+
+	/**
+	 * This method records a razored search, and whether it had to be searched again to the full depth.
+	 * @param researched
+	 */
+	public void razored(boolean researched) {
+		this.razoredCnt++;
+		if(researched)
+			this.razorResearchCnt++;
+	}
+
+	/**
+	 * This method records a node cut off by the transposition table entry of one of its children, before any child was searched.
+	 * @param ply
+	 */
+	public void transpositionCutoff(int ply) {
+		this.cutoffsPerPly[Math.min(ply, maxPly - 1)]++;
+		this.transpositionCutoffs++;
+	}
+
+	public void futile() {
+		this.futileCnt++;
+	}
+
+	/**
+	 * This method starts timing a lookup in a precomputed table, and returns the flight recorder event for it, or null when the event is not recorded.
+	 * A search makes one lookup at a time, so the same event is used for all of them, and a lookup allocates nothing.
+	 * @return
+	 */
+	public ProbeEvent beginProbe() {
+		if(!this.probeEvent.isEnabled())
+			return null;
+		this.probeEvent.begin();
+		return this.probeEvent;
+	}
+
+	/**
+	 * This method records a lookup of the given packed board in the named table, at the given ply, and whether the table held it, and ends its event if there is one.
+	 * @param event
+	 * @param table
+	 * @param packed
+	 * @param ply
+	 * @param hit
+	 */
+	public void endProbe(ProbeEvent event, String table, long packed, int ply, boolean hit) {
+		this.tableProbes++;
+		if(hit)
+			this.tableHits++;
+		if(event == null)
+			return;
+		event.end();
+		if(event.shouldCommit()) {
+			char[] board = new char[PackedBoard.posCnt];
+			PackedBoard.unpack(packed, board);
+			event.table = table;
+			event.board = new String(board);
+			event.depth = ply;
+			event.nodes = this.nodeCnt;
+			event.hit = hit;
+			event.commit();
+		}
+	}
+
+	public void eval() {
+		this.evalCnt++;
+		if(--this.batchLeft == 0) {
+			endEvalBatch();
+			beginEvalBatch();
+		}
+	}
+
+	private void beginEvalBatch() {
+		this.batchLeft = evalBatchSize;
+		if(this.batchEvent.isEnabled())
+			this.batchEvent.begin();
+	}
+
+	/**
+	 * This method writes the event for the evaluations done since the current batch began, if there were any.
+	 */
+	private void endEvalBatch() {
+		int evaluations = evalBatchSize - this.batchLeft;
+		if(evaluations != 0 && this.batchEvent.shouldCommit()) {
+			this.batchEvent.engine = this.engine;
+			this.batchEvent.board = this.board;
+			this.batchEvent.depth = this.iterDepth;
+			this.batchEvent.nodes = this.nodeCnt;
+			this.batchEvent.evaluations = evaluations;
+			this.batchEvent.commit();
+		}
+	}
+
+	public void ttProbe(boolean hit) {
+		this.ttProbes++;
+		if(hit)
+			this.ttHits++;
+	}
+
+	/**
+	 * This method returns the deepest ply at which a node was visited.
+	 * @return
+	 */
+	public int getMaxPly() {
+		for(int i = maxPly - 1; i >= 0; i--) {
+			if(this.nodesPerPly[i] != 0)
+				return i;
+		}
+		return 0;
+	}
+
+	/**
+	 * This method returns the effective branching factor, the geometric mean growth of the node count from ply to ply.
+	 * @return
+	 */
+	public double getEffectiveBranchingFactor() {
+		int d = getMaxPly();
+		if(d == 0 || this.nodesPerPly[0] == 0)
+			return 0;
+		return Math.pow((double) this.nodesPerPly[d] / this.nodesPerPly[0], 1.0 / d);
+	}
+
+	public long getElapsedNanos() {
+		return (this.endNanos >= this.startNanos ? this.endNanos : System.nanoTime()) - this.startNanos;
+	}
+
+	public long getNodesPerSecond() {
+		long elapsed = getElapsedNanos();
+		return elapsed == 0 ? 0 : (long) (this.nodeCnt * 1e9 / elapsed);
+	}
+
+	private String getRate(long hits, long probes) {
+		if(probes == 0)
+			return "n/a";
+		return String.format("%.1f%% (%d/%d)", 100.0 * hits / probes, hits, probes);
+	}
+
+	/**
+	 * This method prints the statistics to the given stream.
+	 * @param out
+	 */
+	public void print(PrintStream out) {
+		int d = getMaxPly();
+		out.println("Nodes visited: "+this.nodeCnt+", static evaluations: "+this.evalCnt);
+		for(int i = 0; i <= d; i++) {
+			out.println("  ply "+i+": nodes "+this.nodesPerPly[i]+", cutoffs "+this.cutoffsPerPly[i]);
+		}
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < maxCutoffIndex; i++) {
+			if(this.cutoffsAtIndex[i] != 0)
+				sb.append(" ").append(i).append(i == maxCutoffIndex - 1 ? "+" : "").append(":").append(this.cutoffsAtIndex[i]);
+		}
+		out.println("Cutoffs by move index:"+(sb.length() == 0 ? " none" : sb.toString()));
+		out.println(String.format("Effective branching factor: %.2f", getEffectiveBranchingFactor()));
+		if(this.reusedNodes != 0)
+			out.println("Nodes reused from the previous search: "+this.reusedNodes);
+		if(this.reducedCnt != 0)
+			out.println("Reduced searches: "+this.reducedCnt+", searched again to full depth: "+this.researchCnt);
+		if(this.razoredCnt != 0)
+			out.println("Razored searches: "+this.razoredCnt+", searched again to full depth: "+this.razorResearchCnt);
+		if(this.futileCnt != 0)
+			out.println("Moves skipped by futility pruning: "+this.futileCnt);
+		out.println("Transposition hits: "+getRate(this.ttHits, this.ttProbes));
+		if(this.transpositionCutoffs != 0)
+			out.println("Enhanced transposition cutoffs: "+this.transpositionCutoffs);
+		if(this.tableProbes != 0)
+			out.println("Table hits: "+getRate(this.tableHits, this.tableProbes));
+		for(long[] it: this.iterations) {
+			out.println("  iteration depth "+it[0]+": nodes "+it[1]+", "+(it[2] / 1000)+" us");
+		}
+		out.println("Elapsed (ms): "+(getElapsedNanos() / 1000000)+", nodes per second: "+getNodesPerSecond());
+	}
+
+}
@@ -0,0 +1,312 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * @author sivakarthik
+ * This class holds the endgame tablebase of the moving phase: the exact outcome of every position, with the side to move, per material class.
+ * A class is named by the piece counts of the side to move and of the other side, both from three to nine, so it covers white and black to move alike.
+ * A position of a class is numbered by the combinatorial rank of the pieces of the side to move among the 23 positions,
+ * and the rank of the other side's pieces among the positions left.
+ * Every position holds one value: 0 for a draw, d for a win and -(d + 1) for a loss of the side to move, where d is the number of plies to the next capture or the end of the game.
+ * Following the wins of the shortest distance, and the losses of the longest, always makes progress.
+ * A class is either held in memory, as read from its raw file, or probed from its block-compressed file through a CompressedTable and a cache of inflated blocks.
+ */
+public class Tablebase {
+
+	public static final int posCnt = 23;
+	public static final int minPieces = 3;
+	public static final int maxPieces = 9;
+	public static final int unknown = Integer.MIN_VALUE;
+	public static final int defaultCacheBlocks = 1024;
+	public static final int maxArraySize = Integer.MAX_VALUE - 8;
+	static final long[][] binomial = new long[posCnt + 1][posCnt + 1];
+
+	short[][] values = new short[(maxPieces + 1) * (maxPieces + 1)][];
+	CompressedTable[] tables = new CompressedTable[(maxPieces + 1) * (maxPieces + 1)];
+	BlockCache cache = new BlockCache(defaultCacheBlocks);
+
+	static {
+		for(int n = 0; n <= posCnt; n++) {
+			binomial[n][0] = 1;
+			for(int k = 1; k <= n; k++) {
+				binomial[n][k] = binomial[n - 1][k - 1] + binomial[n - 1][k];
+			}
+		}
+	}
+
+	public Tablebase() {
+
+	}
+
+	static int getClass(int moverCnt, int otherCnt) {
+		return moverCnt * (maxPieces + 1) + otherCnt;
+	}
+
+	/**
+	 * This method returns the number of positions of the class with the given piece counts.
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @return
+	 */
+	public static long getClassSize(int moverCnt, int otherCnt) {
+		return binomial[posCnt][moverCnt] * binomial[posCnt - moverCnt][otherCnt];
+	}
+
+	/**
+	 * This method returns whether the class with the given piece counts can be held in an array, which is indexed by int.
+	 * The largest classes, 6-8, 7-7 and those with more pieces, can only be built in working files and probed from compressed files.
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @return
+	 */
+	public static boolean fitsInArray(int moverCnt, int otherCnt) {
+		return getClassSize(moverCnt, otherCnt) <= maxArraySize;
+	}
+
+	/**
+	 * This method returns the number of the position with the given pieces of the side to move and of the other side, within its class.
+	 * @param mover
+	 * @param other
+	 * @return
+	 */
+	public static long getIndex(int mover, int other) {
+		long moverRank = 0, otherRank = 0;
+		int i = 0;
+		for(int s = mover; s != 0; s &= s - 1) {
+			moverRank += binomial[Integer.numberOfTrailingZeros(s)][++i];
+		}
+		int free = ~mover & Bitboard.posMask;
+		i = 0;
+		for(int s = other; s != 0; s &= s - 1) {
+			int pos = Integer.numberOfTrailingZeros(s);
+			otherRank += binomial[Integer.bitCount(free & ((1 << pos) - 1))][++i];
+		}
+		return moverRank * binomial[posCnt - Integer.bitCount(mover)][Integer.bitCount(other)] + otherRank;
+	}
+
+	/**
+	 * This method returns the pieces of the side to move of the position with the given number in the given class.
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @param index
+	 * @return
+	 */
+	public static int getMover(int moverCnt, int otherCnt, long index) {
+		return unrank(index / binomial[posCnt - moverCnt][otherCnt], moverCnt, posCnt);
+	}
+
+	/**
+	 * This method returns the pieces of the other side of the position with the given number in the given class, given the pieces of the side to move.
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @param index
+	 * @param mover
+	 * @return
+	 */
+	public static int getOther(int moverCnt, int otherCnt, long index, int mover) {
+		int ranked = unrank(index % binomial[posCnt - moverCnt][otherCnt], otherCnt, posCnt - moverCnt);
+		int free = ~mover & Bitboard.posMask;
+		int other = 0;
+		for(int j = 0; free != 0; j++, free &= free - 1) {
+			if((ranked & (1 << j)) != 0)
+				other |= free & -free;
+		}
+		return other;
+	}
+
+	/**
+	 * This method returns the set of k positions below n with the given combinatorial rank.
+	 * @param rank
+	 * @param k
+	 * @param n
+	 * @return
+	 */
+	private static int unrank(long rank, int k, int n) {
+		int set = 0;
+		int pos = n - 1;
+		for(int i = k; i >= 1; i--) {
+			while(binomial[pos][i] > rank) {
+				pos--;
+			}
+			set |= 1 << pos;
+			rank -= binomial[pos][i];
+			pos--;
+		}
+		return set;
+	}
+
+	public boolean hasClass(int moverCnt, int otherCnt) {
+		int c = getClass(moverCnt, otherCnt);
+		return this.values[c] != null || this.tables[c] != null;
+	}
+
+	public void setClass(int moverCnt, int otherCnt, short[] classValues) {
+		this.values[getClass(moverCnt, otherCnt)] = classValues;
+	}
+
+	/**
+	 * This method opens the compressed file of the given class in the given directory, and probes the class from it from now on, instead of from memory.
+	 * @param dir
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @throws IOException
+	 */
+	public void openCompressed(File dir, int moverCnt, int otherCnt) throws IOException {
+		int c = getClass(moverCnt, otherCnt);
+		CompressedTable t = new CompressedTable(getCompressedFile(dir, moverCnt, otherCnt));
+		if(this.tables[c] != null)
+			this.tables[c].close();
+		this.tables[c] = t;
+		this.values[c] = null;
+	}
+
+	/**
+	 * This method returns the value of the given position, with the given side to move, or unknown when its class is not in the table.
+	 * A side with less than three pieces has lost.
+	 * @param mover
+	 * @param other
+	 * @return
+	 */
+	public int getValue(int mover, int other) {
+		int moverCnt = Integer.bitCount(mover);
+		int otherCnt = Integer.bitCount(other);
+		if(moverCnt < minPieces)
+			return -1;
+		if(otherCnt < minPieces)
+			return 1;
+		if(moverCnt > maxPieces || otherCnt > maxPieces)
+			return unknown;
+		int c = getClass(moverCnt, otherCnt);
+		short[] v = this.values[c];
+		if(v != null)
+			return v[(int) getIndex(mover, other)];
+		if(this.tables[c] != null)
+			return this.tables[c].getValue(getIndex(mover, other), this.cache);
+		return unknown;
+	}
+
+	/**
+	 * This method returns the value of the given packed board for the given side to move, or unknown.
+	 * @param packed
+	 * @param type
+	 * @return
+	 */
+	public int probe(long packed, char type) {
+		int w = PackedBoard.getWhite(packed);
+		int b = PackedBoard.getBlack(packed);
+		return (type == 'w') ? getValue(w, b) : getValue(b, w);
+	}
+
+	static File getFile(File dir, int moverCnt, int otherCnt) {
+		return new File(dir, "tb"+moverCnt+otherCnt+".bin");
+	}
+
+	static File getCompressedFile(File dir, int moverCnt, int otherCnt) {
+		return new File(dir, "tb"+moverCnt+otherCnt+".cbin");
+	}
+
+	/**
+	 * This method writes the given class to its file in the given directory.
+	 * @param dir
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @throws IOException
+	 */
+	public void save(File dir, int moverCnt, int otherCnt) throws IOException {
+		short[] v = this.values[getClass(moverCnt, otherCnt)];
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getFile(dir, moverCnt, otherCnt)), 1 << 16));
+		try {
+			for(short s: v) {
+				out.writeShort(s);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * This method writes the given class to its block-compressed file in the given directory.
+	 * @param dir
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @throws IOException
+	 */
+	public void saveCompressed(File dir, int moverCnt, int otherCnt) throws IOException {
+		CompressedTable.write(getCompressedFile(dir, moverCnt, otherCnt), moverCnt, otherCnt, this.values[getClass(moverCnt, otherCnt)], CompressedTable.defaultBlockSize);
+	}
+
+	/**
+	 * This method reads the raw class file with the given piece counts.
+	 * @param f
+	 * @param moverCnt
+	 * @param otherCnt
+	 * @return
+	 * @throws IOException
+	 */
+	static short[] readClass(File f, int moverCnt, int otherCnt) throws IOException {
+		if(!fitsInArray(moverCnt, otherCnt))
+			throw new IOException("Class "+moverCnt+"-"+otherCnt+" is too large to be read into memory, it has to be probed from its compressed file.");
+		short[] v = new short[(int) getClassSize(moverCnt, otherCnt)];
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+		try {
+			for(int i = 0; i < v.length; i++) {
+				v[i] = in.readShort();
+			}
+		} finally {
+			in.close();
+		}
+		return v;
+	}
+
+	/**
+	 * This method opens every class found in the given directory, and returns the number of classes found.
+	 * A class with a compressed file is probed from it, and any other class file is read into memory.
+	 * @param dir
+	 * @return
+	 * @throws IOException
+	 */
+	public int load(File dir) throws IOException {
+		int cnt = 0;
+		for(int m = minPieces; m <= maxPieces; m++) {
+			for(int o = minPieces; o <= maxPieces; o++) {
+				File compressed = getCompressedFile(dir, m, o);
+				File f = getFile(dir, m, o);
+				if(compressed.isFile())
+					openCompressed(dir, m, o);
+				else if(f.isFile())
+					setClass(m, o, readClass(f, m, o));
+				else
+					continue;
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+
+	/**
+	 * This method sets the number of inflated blocks kept in memory, and empties the cache.
+	 * @param blocks
+	 */
+	public void setCacheBlocks(int blocks) {
+		this.cache = new BlockCache(blocks);
+	}
+
+	/**
+	 * This method closes the compressed class files.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		for(int c = 0; c < this.tables.length; c++) {
+			if(this.tables[c] != null)
+				this.tables[c].close();
+			this.tables[c] = null;
+		}
+	}
+
+}
@@ -0,0 +1,400 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author sivakarthik
+ * This class contains logic to play full self-play games, placement phase and then moving phase, between two engine configurations.
+ * The games run concurrently on all cores. It reports the results with the Elo difference, and the average time and nodes per move of each side.
+ * The engines are deterministic, so the games start from distinct random openings, each played once with either color, and the number of openings is reported with the result.
+ */
+public class Tournament {
+
+	public static final int posCnt = 23;
+	public static final int openingPlies = 18;
+	static final long seed = 1234567L;
+	static final int maxOpeningMisses = 1000;
+
+	Player playerA, playerB;
+	int gameCnt;
+	int threadCnt;
+	int randomPlies = 4;
+	int maxPlies = 200;
+
+	/**
+	 * This class holds one engine configuration, and plays a move with it. The engines always play white, so black's boards are flipped before and after the move.
+	 * An ab configuration can carry ABGame options after the depth, like ab:6:lmr=1, which apply to its moving phase search.
+	 * For mcts the number is the time per move in milliseconds instead of a depth, and it plays both phases with MonteCarloSearch. Every game thread keeps its own search, so the node pool is allocated once per thread.
+	 * It can carry MonteCarloSearch options the same way, like mcts:100:threads=4.
+	 */
+	static class Player {
+		String kind;
+		int depth;
+		String spec;
+		String[] options;
+		ThreadLocal<MonteCarloSearch> searches = new ThreadLocal<MonteCarloSearch>();
+
+		Player(String spec) {
+			String[] parts = spec.split(":");
+			this.spec = spec;
+			this.kind = parts[0].toLowerCase();
+			this.depth = Integer.parseInt(parts[1]);
+			this.options = new String[parts.length - 2];
+			System.arraycopy(parts, 2, this.options, 0, this.options.length);
+			if(!this.kind.equals("minimax") && !this.kind.equals("improved") && !this.kind.equals("ab") && !this.kind.equals("mcts")) {
+				throw new IllegalArgumentException("Unknown engine: "+parts[0]);
+			}
+			if(this.depth < 1) {
+				throw new IllegalArgumentException("Depth and time have to be positive.");
+			}
+			if(this.options.length > 0 && !this.kind.equals("ab") && !this.kind.equals("mcts")) {
+				throw new IllegalArgumentException("Options are only supported by ab and mcts.");
+			}
+			for(String option: this.options) {
+				boolean valid = this.kind.equals("ab") ? new ABGame().setOption(option) : new MonteCarloSearch().setOption(option);
+				if(!valid)
+					throw new IllegalArgumentException("Invalid option: "+option);
+			}
+		}
+
+		/**
+		 * This method returns whether the engine searches on more threads than the one calling move, so its cpu time can't be read from that thread.
+		 * @return
+		 */
+		boolean isParallel() {
+			MonteCarloSearch m = this.searches.get();
+			if(m == null && this.kind.equals("mcts")) {
+				m = new MonteCarloSearch();
+				for(String option: this.options) {
+					m.setOption(option);
+				}
+			}
+			return m != null && m.threadCnt > 1;
+		}
+
+		/**
+		 * This method plays one move for white on the given board, with the given number of plies left in the placement phase. It adds the nodes visited, or the playouts for mcts, to cost[0].
+		 * @param board
+		 * @param placementPlies
+		 * @param cost
+		 * @return
+		 */
+		char[] move(char[] board, int placementPlies, long[] cost) {
+			boolean opening = (placementPlies > 0);
+			if(this.kind.equals("mcts")) {
+				MonteCarloSearch m = this.searches.get();
+				if(m == null) {
+					m = new MonteCarloSearch();
+					for(String option: this.options) {
+						m.setOption(option);
+					}
+					this.searches.set(m);
+				}
+				m.inBoard = board;
+				m.timeLimitMillis = this.depth;
+				m.placementPlies = placementPlies;
+				m.run();
+				cost[0] += m.playoutCnt;
+				return m.outBoard;
+			} else if(opening) {
+				if(this.kind.equals("ab")) {
+					ABOpening m = new ABOpening();
+					m.inBoard = board;
+					m.treeDepth = this.depth;
+					m.run();
+					cost[0] += m.stats.nodeCnt;
+					return m.outBoard;
+				} else if(this.kind.equals("improved")) {
+					MiniMaxOpeningImproved m = new MiniMaxOpeningImproved();
+					m.inBoard = board;
+					m.treeDepth = this.depth;
+					m.run();
+					cost[0] += m.stats.nodeCnt;
+					return m.root.board;
+				} else {
+					MiniMaxOpening m = new MiniMaxOpening();
+					m.inBoard = board;
+					m.treeDepth = this.depth;
+					m.run();
+					cost[0] += m.stats.nodeCnt;
+					return m.root.board;
+				}
+			} else {
+				if(this.kind.equals("ab")) {
+					ABGame m = new ABGame();
+					m.inBoard = board;
+					m.treeDepth = this.depth;
+					for(String option: this.options) {
+						m.setOption(option);
+					}
+					m.search();
+					cost[0] += m.stats.nodeCnt;
+					return m.outBoard;
+				} else if(this.kind.equals("improved")) {
+					MiniMaxGameImproved m = new MiniMaxGameImproved();
+					m.inBoard = board;
+					m.treeDepth = this.depth;
+					m.search();
+					cost[0] += m.stats.nodeCnt;
+					return m.root.board;
+				} else {
+					MiniMaxGame m = new MiniMaxGame();
+					m.inBoard = board;
+					m.treeDepth = this.depth;
+					m.search();
+					cost[0] += m.stats.nodeCnt;
+					return m.root.board;
+				}
+			}
+		}
+
+		public String toString() {
+			return this.spec;
+		}
+	}
+
+	/**
+	 * This class holds the outcome of one game: the score of player A, and the moves, nodes, cpu time and wall time spent by each side.
+	 */
+	static class GameResult {
+		double scoreA;
+		int plies;
+		long[] moves = new long[2];
+		long[] nodes = new long[2];
+		long[] cpuNanos = new long[2];
+		long[] wallNanos = new long[2];
+	}
+
+	public Tournament() {
+
+	}
+
+	/**
+	 * This method contains the initialization logic. It reads the two engine configurations, the number of games, and optionally the thread count and the number of random opening plies.
+	 * @param args
+	 */
+	public void initialize(String[] args) {
+		if(args.length < 3) {
+			System.out.println("Invalid Number of Arguments. Need engineA:depth, engineB:depth, number of games, and optionally threads and random opening plies. Engines are minimax, improved, ab and mcts:milliseconds.");
+			System.exit(1);
+		}
+		try {
+			this.playerA = new Player(args[0]);
+			this.playerB = new Player(args[1]);
+		} catch(RuntimeException e) {
+			System.out.println("Invalid engine configuration: "+e.getMessage());
+			System.exit(1);
+		}
+		this.gameCnt = Integer.parseInt(args[2]);
+		this.threadCnt = (args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors());
+		if(args.length > 4)
+			this.randomPlies = Integer.parseInt(args[4]);
+		if(this.gameCnt < 1 || this.threadCnt < 1 || this.randomPlies < 0 || this.randomPlies >= openingPlies) {
+			System.out.println("Games and threads have to be positive, random opening plies has to be less than "+openingPlies+".");
+			System.exit(1);
+		}
+	}
+
+	private static int getOccCnt(char[] board, char c) {
+		int cnt = 0;
+		for(char a: board) {
+			if(a == c)
+				cnt++;
+		}
+		return cnt;
+	}
+
+	private static char[] flipWB(char[] board) {
+		char[] flipped = new char[posCnt];
+		for(int i = 0; i < posCnt; i++) {
+			if(board[i] == 'w')
+				flipped[i] = 'b';
+			else if(board[i] == 'b')
+				flipped[i] = 'w';
+			else
+				flipped[i] = board[i];
+		}
+		return flipped;
+	}
+
+	private static List<char[]> generatePossibleBoards(char[] board, boolean opening) {
+		Node n = new Node();
+		n.board = board;
+		n.type = 'w';
+		if(opening)
+			return new MiniMaxOpening().generatePossibleBoards(n);
+		return new MiniMaxGame().generatePossibleBoards(n);
+	}
+
+	/**
+	 * This method draws the openings of the tournament: the boards after the random placements, with a board and its mirror image counted as one opening.
+	 * It draws until there is one opening for every two games, or until the last maxOpeningMisses draws found only openings it already had.
+	 * @return
+	 */
+	List<char[]> drawOpenings() {
+		Random random = new Random(seed);
+		Set<Long> seen = new HashSet<Long>();
+		List<char[]> openings = new ArrayList<char[]>();
+		int wanted = (this.gameCnt + 1) / 2;
+		int misses = 0;
+		while(openings.size() < wanted && misses < maxOpeningMisses) {
+			char[] board = new char[posCnt];
+			for(int i = 0; i < posCnt; i++) {
+				board[i] = 'x';
+			}
+			for(int ply = 0; ply < this.randomPlies; ply++) {
+				boolean white = (ply % 2 == 0);
+				List<char[]> L = generatePossibleBoards(white ? board : flipWB(board), true);
+				char[] next = L.get(random.nextInt(L.size()));
+				board = white ? next : flipWB(next);
+			}
+			if(seen.add(OpeningBook.getCanonical(PackedBoard.pack(board)))) {
+				openings.add(board);
+				misses = 0;
+			} else {
+				misses++;
+			}
+		}
+		return openings;
+	}
+
+	/**
+	 * This method plays one game from the given opening, the board after the random placements.
+	 * The cpu time of a move is read from the calling thread, so it is only reported for engines that search on that thread alone. The wall time is kept for every engine.
+	 * @param aIsWhite
+	 * @param opening
+	 * @return
+	 */
+	GameResult playGame(boolean aIsWhite, char[] start) {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		GameResult result = new GameResult();
+		Map<String, Integer> seen = new HashMap<String, Integer>();
+		char[] board = start;
+
+		int ply = this.randomPlies;
+		while(true) {
+			boolean white = (ply % 2 == 0);
+			boolean opening = (ply < openingPlies);
+			int side = (white == aIsWhite) ? 0 : 1;
+			char[] view = white ? board : flipWB(board);
+
+			if(!opening) {
+				if(getOccCnt(view, 'w') <= 2 || generatePossibleBoards(view, false).size() == 0) {
+					result.scoreA = (side == 0) ? 0 : 1;
+					break;
+				}
+				String key = new String(board) + (white ? 'w' : 'b');
+				Integer cnt = seen.get(key);
+				seen.put(key, cnt == null ? 1 : cnt + 1);
+				if((cnt != null && cnt + 1 >= 3) || ply >= this.maxPlies) {
+					result.scoreA = 0.5;
+					break;
+				}
+			}
+
+			long[] cost = new long[1];
+			long cpuStart = threadBean.getCurrentThreadCpuTime();
+			long wallStart = System.nanoTime();
+			char[] next = (side == 0 ? this.playerA : this.playerB).move(view, Math.max(openingPlies - ply, 0), cost);
+			result.cpuNanos[side] += threadBean.getCurrentThreadCpuTime() - cpuStart;
+			result.wallNanos[side] += System.nanoTime() - wallStart;
+			result.nodes[side] += cost[0];
+			result.moves[side]++;
+			board = white ? next : flipWB(next);
+			ply++;
+		}
+		result.plies = ply;
+		return result;
+	}
+
+	private static double getElo(double score) {
+		score = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+	/**
+	 * This method plays all the games on a thread pool, every distinct opening once with each color per engine, and prints the results.
+	 * When there are fewer distinct openings than half the games, only the games on distinct openings are played, as repeating one would only repeat its games.
+	 * @throws Exception
+	 */
+	public void run() throws Exception {
+		List<char[]> openings = drawOpenings();
+		int n = Math.min(this.gameCnt, 2 * openings.size());
+		ExecutorService pool = Executors.newFixedThreadPool(this.threadCnt);
+		List<Future<GameResult>> futures = new ArrayList<Future<GameResult>>();
+		long start = System.nanoTime();
+		for(int g = 0; g < n; g++) {
+			final boolean aIsWhite = (g % 2 == 0);
+			final char[] opening = openings.get(g / 2);
+			futures.add(pool.submit(new Callable<GameResult>() {
+				public GameResult call() {
+					return playGame(aIsWhite, opening);
+				}
+			}));
+		}
+
+		int wins = 0, draws = 0, losses = 0;
+		long plies = 0;
+		long[] moves = new long[2], nodes = new long[2], cpuNanos = new long[2], wallNanos = new long[2];
+		for(Future<GameResult> f: futures) {
+			GameResult r = f.get();
+			if(r.scoreA == 1)
+				wins++;
+			else if(r.scoreA == 0)
+				losses++;
+			else
+				draws++;
+			plies += r.plies;
+			for(int s = 0; s < 2; s++) {
+				moves[s] += r.moves[s];
+				nodes[s] += r.nodes[s];
+				cpuNanos[s] += r.cpuNanos[s];
+				wallNanos[s] += r.wallNanos[s];
+			}
+		}
+		pool.shutdown();
+		long elapsed = System.nanoTime() - start;
+
+		double score = (wins + 0.5 * draws) / n;
+		double var = (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score) + losses * score * score) / n;
+		double err = 1.96 * Math.sqrt(var / n);
+		double elo = getElo(score);
+		double eloLow = getElo(score - err), eloHigh = getElo(score + err);
+
+		System.out.println("A: "+this.playerA+", B: "+this.playerB+", games: "+n+", threads: "+this.threadCnt+", random opening plies: "+this.randomPlies+", distinct openings: "+openings.size());
+		if(n < this.gameCnt)
+			System.out.println("Only "+n+" of "+this.gameCnt+" games played, there are no more distinct openings. Use more random opening plies for more games.");
+		System.out.println("A wins: "+wins+", draws: "+draws+", B wins: "+losses+", average plies per game: "+String.format("%.1f", (double) plies / n));
+		System.out.println(String.format("Score of A: %.1f%%, Elo difference: %+.1f (95%% interval %+.1f to %+.1f)", 100 * score, elo, eloLow, eloHigh));
+		String[] names = {"A", "B"};
+		Player[] players = {this.playerA, this.playerB};
+		for(int s = 0; s < 2; s++) {
+			long m = Math.max(moves[s], 1);
+			String cpu = players[s].isParallel() ? "cpu ms/move n/a (parallel)" : String.format("cpu ms/move %.3f", cpuNanos[s] / 1e6 / m);
+			System.out.println(String.format("%s (%s): moves %d, %s, wall ms/move %.3f, nodes/move %.1f", names[s], players[s], moves[s], cpu, wallNanos[s] / 1e6 / m, (double) nodes[s] / m));
+		}
+		System.out.println(String.format("Elapsed (s): %.1f, games per second: %.2f", elapsed / 1e9, n * 1e9 / elapsed));
+	}
+
+	/**
+	 * This is the main method. It takes engineA:depth, engineB:depth, number of games, and optionally threads and random opening plies.
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String args[]) throws Exception {
+		Tournament t = new Tournament();
+		t.initialize(args);
+		t.run();
+	}
+
+}
@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+/**
+ * @author sivakarthik
+ * This class contains logic to remember the exact values of the positions already searched.
+ * A position is keyed by its packed board, the side to move, taken from whether its ply below the root is odd, and the depth left to search below it.
+ * The same position reached through different move orders, and searched to the same depth, gets the stored value instead of being searched again.
+ * The value doesn't depend on the ply itself, so a table can also be kept across searches from different roots, as long as white is to move at every root.
+ * It is a fixed size open addressing table of longs and ints, so probing and storing never allocate.
+ */
+public class TranspositionTable {
+
+	public static final int defaultBits = 18;
+	public static final int none = -1;
+	static final int probeLength = 4;
+
+	long[] keys;
+	int[] values;
+	int mask;
+
+	public TranspositionTable() {
+		this(defaultBits);
+	}
+
+	public TranspositionTable(int bits) {
+		this.keys = new long[1 << bits];
+		this.values = new int[1 << bits];
+		this.mask = (1 << bits) - 1;
+	}
+
+	/**
+	 * This method returns the key of the given packed board at the given ply, searched to the given depth below it. Only the parity of the ply, the side to move, goes into the key.
+	 * Bit 63 is always set, so no key is 0, the mark of an empty slot.
+	 * @param packedBoard
+	 * @param ply
+	 * @param draft
+	 * @return
+	 */
+	public static long getKey(long packedBoard, int ply, int draft) {
+		return packedBoard | ((long) (ply & 1) << (2 * PackedBoard.posCnt)) | ((long) draft << (2 * PackedBoard.posCnt + 6)) | Long.MIN_VALUE;
+	}
+
+	private int getSlot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 40) & this.mask;
+	}
+
+	/**
+	 * This method returns the slot holding the given key, or none.
+	 * @param key
+	 * @return
+	 */
+	public int find(long key) {
+		int slot = getSlot(key);
+		for(int i = 0; i < probeLength; i++) {
+			long k = this.keys[slot];
+			if(k == key)
+				return slot;
+			if(k == 0)
+				return none;
+			slot = (slot + 1) & this.mask;
+		}
+		return none;
+	}
+
+	public int getValue(int slot) {
+		return this.values[slot];
+	}
+
+	/**
+	 * This method stores the value of the given key. When the probed slots are all taken by other keys, the first of them is replaced.
+	 * @param key
+	 * @param value
+	 */
+	public void put(long key, int value) {
+		int first = getSlot(key);
+		int slot = first;
+		for(int i = 0; i < probeLength; i++) {
+			long k = this.keys[slot];
+			if(k == key || k == 0) {
+				this.keys[slot] = key;
+				this.values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		this.keys[first] = key;
+		this.values[first] = value;
+	}
+
+	public void clear() {
+		Arrays.fill(this.keys, 0);
+	}
+
+}
@@ -0,0 +1,115 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author sivakarthik
+ * This class stores the tree of MonteCarloSearch in primitive arrays allocated once, up front, for a fixed number of nodes.
+ * The children of a node are added all at once and take consecutive indices, so a node only needs the index of its first child and the child count.
+ * Every node counts its visits, and the score of the side that moved into it over those visits, in half points: 2 for a win, 1 for a draw.
+ * When the pool is full the tree stops growing, and the search carries on with playouts from its leaves.
+ * Many threads can search the tree at once without a lock. The counts are atomic, and a node is expanded by the one thread that claims it,
+ * which writes the children before it publishes the index of the first one.
+ */
+public class UctTree {
+
+	public static final int none = -1;
+	public static final int expanding = -2;
+	public static final int defaultCapacity = 1 << 20;
+
+	long[] board;
+	int[] parent;
+	int[] childCnt;
+	int[] depth;
+	AtomicIntegerArray firstChild;
+	AtomicIntegerArray visits;
+	AtomicLongArray score;
+	int capacity;
+	AtomicInteger size = new AtomicInteger();
+
+	public UctTree() {
+		this(defaultCapacity);
+	}
+
+	public UctTree(int capacity) {
+		this.capacity = capacity;
+		this.board = new long[capacity];
+		this.parent = new int[capacity];
+		this.childCnt = new int[capacity];
+		this.depth = new int[capacity];
+		this.firstChild = new AtomicIntegerArray(capacity);
+		this.visits = new AtomicIntegerArray(capacity);
+		this.score = new AtomicLongArray(capacity);
+	}
+
+	/**
+	 * This method drops all the nodes, and adds the root for the given board. It returns the index of the root.
+	 * It must not run while a search is using the tree.
+	 * @param packedBoard
+	 * @return
+	 */
+	public int reset(long packedBoard) {
+		this.size.set(1);
+		initNode(0, packedBoard, none, 0);
+		return 0;
+	}
+
+	private void initNode(int n, long packedBoard, int parentNode, int nodeDepth) {
+		this.board[n] = packedBoard;
+		this.parent[n] = parentNode;
+		this.childCnt[n] = 0;
+		this.depth[n] = nodeDepth;
+		this.firstChild.lazySet(n, none);
+		this.visits.lazySet(n, 0);
+		this.score.lazySet(n, 0);
+	}
+
+	/**
+	 * This method adds the given boards as the children of the given node. It returns false, and adds nothing,
+	 * when another thread is expanding the node or has expanded it, or when the pool has no room for all of them.
+	 * @param node
+	 * @param boards
+	 * @param cnt
+	 * @return
+	 */
+	public boolean expand(int node, long[] boards, int cnt) {
+		if(!this.firstChild.compareAndSet(node, none, expanding))
+			return false;
+		int first;
+		do {
+			first = this.size.get();
+			if(first + cnt > this.capacity) {
+				this.firstChild.set(node, none);
+				return false;
+			}
+		} while(!this.size.compareAndSet(first, first + cnt));
+		for(int i = 0; i < cnt; i++) {
+			initNode(first + i, boards[i], node, this.depth[node] + 1);
+		}
+		this.childCnt[node] = cnt;
+		this.firstChild.set(node, first);
+		return true;
+	}
+
+	public boolean isExpanded(int n) {
+		return this.firstChild.get(n) >= 0;
+	}
+
+	/**
+	 * This method returns the side to move at the given node. The root is always white to move.
+	 * @param n
+	 * @return
+	 */
+	public char getType(int n) {
+		return (this.depth[n] % 2 == 0) ? 'w' : 'b';
+	}
+
+	public int getSize() {
+		return this.size.get();
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+}
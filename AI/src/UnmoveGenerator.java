@@ -0,0 +1,111 @@
+/**
+ * @author sivakarthik
+ * This class contains logic to generate the predecessors of a board of the moving phase one at a time, as packed boards, without allocating.
+ * A predecessor is a board, with the other side to move, that the moves of MoveGenerator turn into the given board.
+ * The side that just moved took a piece back to an empty position it could move from: a neighbour, or any empty position when it has three pieces.
+ * If the piece now stands in a mill, the move was a capture, and an un-capture also puts a piece of the side to move back on an empty position,
+ * where it must have been capturable: not in a mill, unless that side had three pieces. Otherwise the move was a plain move.
+ * Boards where either side has less than three pieces are never predecessors, as the game is over there.
+ */
+public class UnmoveGenerator {
+
+	public static final long none = -1L;
+
+	boolean white;
+	boolean quiet, uncaptures;
+	int mover, other, empty;
+	boolean flying;
+	int targets, to;
+	int sources, moved, from;
+	int restores;
+
+	public UnmoveGenerator() {
+
+	}
+
+	/**
+	 * This method starts the generation for the given board and side to move. With quiet set it generates the un-moves of plain moves,
+	 * and with uncaptures set the un-moves of captures.
+	 * @param packedBoard
+	 * @param type
+	 * @param quiet
+	 * @param uncaptures
+	 */
+	public void init(long packedBoard, char type, boolean quiet, boolean uncaptures) {
+		int w = PackedBoard.getWhite(packedBoard);
+		int b = PackedBoard.getBlack(packedBoard);
+		this.white = (type == 'w');
+		this.quiet = quiet;
+		this.uncaptures = uncaptures;
+		this.mover = this.white ? b : w;
+		this.other = this.white ? w : b;
+		this.empty = ~(w | b) & Bitboard.posMask;
+		this.flying = (Integer.bitCount(this.mover) == 3);
+		this.targets = this.mover;
+		this.sources = 0;
+		this.restores = 0;
+		int otherCnt = Integer.bitCount(this.other);
+		if(Integer.bitCount(this.mover) < 3 || otherCnt < 2)
+			this.targets = 0;
+		if(otherCnt < 3)
+			this.quiet = false;
+		if(otherCnt >= Tablebase.maxPieces)
+			this.uncaptures = false;
+	}
+
+	/**
+	 * This method returns the next predecessor, or none when all of them have been generated.
+	 * @return
+	 */
+	public long next() {
+		while(true) {
+			if(this.restores != 0) {
+				int c = this.restores & -this.restores;
+				this.restores &= this.restores - 1;
+				return getBoard(this.moved, this.other | c);
+			}
+			if(this.sources != 0) {
+				this.from = Integer.numberOfTrailingZeros(this.sources);
+				this.sources &= this.sources - 1;
+				this.moved = (this.mover & ~(1 << this.to)) | (1 << this.from);
+				if(!Bitboard.isInMill(this.mover, this.to))
+					return getBoard(this.moved, this.other);
+				this.restores = getRestores();
+				continue;
+			}
+			if(this.targets != 0) {
+				this.to = Integer.numberOfTrailingZeros(this.targets);
+				this.targets &= this.targets - 1;
+				boolean mill = Bitboard.isInMill(this.mover, this.to);
+				if(mill ? !this.uncaptures : !this.quiet)
+					continue;
+				this.sources = this.flying ? this.empty : Bitboard.neighbours[this.to] & this.empty;
+				continue;
+			}
+			return none;
+		}
+	}
+
+	/**
+	 * This method returns the positions a captured piece can be put back on, for the current un-move: the empty positions left,
+	 * where the piece would not be in a mill of its side, unless its side then has three pieces.
+	 * @return
+	 */
+	private int getRestores() {
+		int spots = this.empty & ~(1 << this.from);
+		if(Integer.bitCount(this.other) + 1 == 3)
+			return spots;
+		int restores = 0;
+		for(int s = spots; s != 0; s &= s - 1) {
+			int pos = Integer.numberOfTrailingZeros(s);
+			if(!Bitboard.isInMill(this.other | (1 << pos), pos))
+				restores |= 1 << pos;
+		}
+		return restores;
+	}
+
+	private long getBoard(int moverPieces, int otherPieces) {
+		return this.white ? PackedBoard.fromMasks(otherPieces, moverPieces) : PackedBoard.fromMasks(moverPieces, otherPieces);
+	}
+
+}